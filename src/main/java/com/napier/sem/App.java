@@ -1,7 +1,16 @@
 package com.napier.sem;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 /**
  * Small CLI and data-access utility for the "world" sample database.
@@ -18,6 +27,28 @@ public class App {
     private final String dbUrl;
     private final String dbUser;
     private final String dbPassword;
+    // Rows a ranking export may hold in memory before spilling to disk.
+    private int rankingMemoryRows = 100_000;
+    // Opt-in EXPLAIN capture and slow-query log; null when disabled.
+    private QueryDiagnostics diagnostics = null;
+    // Negative caches for lookups of keys that do not exist; null until
+    // loaded. Replaced wholesale on refresh, never modified in place.
+    static final double FILTER_FALSE_POSITIVE_RATE = 0.001;
+    private volatile BloomFilter cityIdFilter = null;
+    private volatile BloomFilter countryCodeFilter = null;
+    // A filter only knows the rows that existed when it was built, so a
+    // miss on a filter older than this is not trusted: it goes to the
+    // database and a rebuild starts in the background. A missing filter
+    // (e.g. after a failed load) is retried at the same rate. Zero or less
+    // turns the filters off.
+    static final long DEFAULT_FILTER_REFRESH_MILLIS = 60_000;
+    private long filterRefreshMillis = DEFAULT_FILTER_REFRESH_MILLIS;
+    private volatile long filtersBuiltAt = 0;
+    // nanoTime of the last load attempt; background rebuilds only start
+    // once connect() or refreshMembershipFilters() has made one.
+    private volatile long filtersAttemptedAt = 0;
+    private volatile boolean filtersAttempted = false;
+    private final AtomicBoolean filterRebuildRunning = new AtomicBoolean();
 
     // Default constructor – used in production / main()
     public App() {
@@ -35,11 +66,119 @@ public class App {
         this.dbPassword = dbPassword;
     }
 
+    // Warm-up defaults. HotSpot's tier 4 (C2) thresholds are roughly 5k-15k
+    // invocations, so the default runs each renderer and the encoder past
+    // that; warmUp() prints whether the per-round p99 has stopped improving.
+    static final int DEFAULT_WARMUP_ITERATIONS = 15_000;
+    // Only every Nth round queries the database, keeping the default
+    // warm-up to 6k queries per dataset. The per-row driver and mapping
+    // code still runs tens of thousands of times.
+    static final int WARMUP_DB_EVERY = 10;
+    // Rounds per window when comparing early and late warm-up latency.
+    static final int WARMUP_WINDOW = 500;
+
+    public void setDiagnostics(QueryDiagnostics diagnostics) {
+        this.diagnostics = diagnostics;
+    }
+
+    public void setFilterRefreshInterval(long millis) {
+        this.filterRefreshMillis = millis;
+        if (millis <= 0) {
+            cityIdFilter = null;
+            countryCodeFilter = null;
+        }
+    }
+
     public static void main(String[] args) {
-        App a = new App();
-        a.connect();
+        List<String> flags = Arrays.asList(args);
+        if (flags.contains("--cds-training")) {
+            // Used at image build time to record an AppCDS archive. One
+            // connection attempt loads Connector/J's connection and protocol
+            // classes even when it fails; if APP_CDS_TRAINING_DB_URL points
+            // at a live database the result-set paths are recorded too.
+            App training = new App(
+                    System.getenv().getOrDefault("APP_CDS_TRAINING_DB_URL", CDS_TRAINING_DB_URL),
+                    System.getenv().getOrDefault("DB_USER", "root"),
+                    System.getenv().getOrDefault("DB_PASS", "example"));
+            training.connectOnce();
+            training.warmUp(1);
+            training.disconnect();
+            return;
+        }
+
+        // A ready file left over from a previous run of this container
+        // would make the health check pass before warm-up has finished.
+        clearReady();
+
+        // WORLD_DATASETS lets one process host several copies of the data;
+        // without it we serve the single default database as before.
+        Datasets datasets = Datasets.fromEnv();
+        if (datasets == null) {
+            datasets = new Datasets();
+            datasets.add("world", new App());
+        }
+        QueryDiagnostics diagnostics = QueryDiagnostics.fromEnv();
+        long filterRefresh = filterRefreshMillis();
+        for (String key : datasets.keys()) {
+            if (diagnostics != null) datasets.get(key).setDiagnostics(diagnostics);
+            datasets.get(key).setFilterRefreshInterval(filterRefresh);
+        }
+        datasets.connectAll();
+        int warmup = warmupIterations(flags);
+        if (warmup > 0) {
+            for (String key : datasets.keys()) {
+                datasets.get(key).warmUp(warmup);
+            }
+        }
+
+        // The interactive menu drives one dataset, chosen by APP_DATASET.
+        String key = System.getenv().getOrDefault("APP_DATASET", datasets.keys().iterator().next());
+        App a = datasets.get(key);
+        a.markReady();
         a.menu();
-        a.disconnect();
+        datasets.disconnectAll();
+    }
+
+    // Warm-up is enabled by the --warmup flag or APP_WARMUP_ITERATIONS.
+    static int warmupIterations(List<String> flags) {
+        String env = System.getenv("APP_WARMUP_ITERATIONS");
+        if (env != null && !env.isBlank()) {
+            try {
+                return Math.max(0, Integer.parseInt(env.trim()));
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring invalid APP_WARMUP_ITERATIONS: " + env);
+            }
+        }
+        return flags.contains("--warmup") ? DEFAULT_WARMUP_ITERATIONS : 0;
+    }
+
+    // APP_FILTER_REFRESH_SECONDS bounds how stale a membership filter may
+    // be before a miss is rechecked; 0 disables the filters.
+    static long filterRefreshMillis() {
+        String env = System.getenv("APP_FILTER_REFRESH_SECONDS");
+        if (env != null && !env.isBlank()) {
+            try {
+                return Math.max(0, Long.parseLong(env.trim())) * 1000;
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring invalid APP_FILTER_REFRESH_SECONDS: " + env);
+            }
+        }
+        return DEFAULT_FILTER_REFRESH_MILLIS;
+    }
+
+    // Nothing listens on port 1, so the training attempt fails fast.
+    static final String CDS_TRAINING_DB_URL =
+            "jdbc:mysql://127.0.0.1:1/world?connectTimeout=1000&allowPublicKeyRetrieval=true&useSSL=false";
+
+    // Single connection attempt without waiting; used for CDS training.
+    void connectOnce() {
+        try {
+            Class.forName("com.mysql.cj.jdbc.Driver");
+            con = DriverManager.getConnection(dbUrl, dbUser, dbPassword);
+            System.out.println("Successfully connected");
+        } catch (ClassNotFoundException | SQLException e) {
+            System.out.println("Training connection failed: " + e.getMessage());
+        }
     }
 
     public void connect() {
@@ -68,6 +207,70 @@ public class App {
                 System.out.println(sqle.getMessage());
             } catch (InterruptedException ignored) {}
         }
+        if (con != null) {
+            refreshMembershipFilters();
+        }
+    }
+
+    /**
+     * Rebuild the Bloom filters of valid city IDs and country codes from
+     * the current data. After the first call this also happens in the
+     * background when a lookup misses a filter older than the refresh
+     * interval, so rows added since the last build are found. If loading
+     * fails the previous filters are kept but no longer trusted once
+     * stale, and the load is retried after the refresh interval.
+     */
+    public void refreshMembershipFilters() {
+        if (con == null || filterRefreshMillis <= 0) return;
+        filtersAttemptedAt = System.nanoTime();
+        filtersAttempted = true;
+        try (Statement st = con.createStatement()) {
+            int[] ids = new int[1024];
+            int n = 0;
+            try (ResultSet rs = st.executeQuery("SELECT ID FROM city")) {
+                while (rs.next()) {
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = rs.getInt(1);
+                }
+            }
+            List<String> codes = new ArrayList<>();
+            try (ResultSet rs = st.executeQuery("SELECT Code FROM country")) {
+                while (rs.next()) {
+                    codes.add(rs.getString(1));
+                }
+            }
+            BloomFilter cityFilter = new BloomFilter(n, FILTER_FALSE_POSITIVE_RATE);
+            for (int i = 0; i < n; i++) cityFilter.add(ids[i]);
+            BloomFilter codeFilter = new BloomFilter(codes.size(), FILTER_FALSE_POSITIVE_RATE);
+            for (String code : codes) codeFilter.add(codeKey(code));
+            filtersBuiltAt = System.nanoTime();
+            cityIdFilter = cityFilter;
+            countryCodeFilter = codeFilter;
+        } catch (SQLException e) {
+            System.out.println("Failed to load membership filters: " + e.getMessage());
+        }
+    }
+
+    /** True once membership filters have been loaded. */
+    public boolean hasMembershipFilters() {
+        return cityIdFilter != null && countryCodeFilter != null;
+    }
+
+    // Filter key for a country code: upper case without trailing spaces.
+    // This only covers case, so mightHaveCountry() checks plain three
+    // letter codes and leaves anything else to the server, whose collation
+    // may also fold accents.
+    private static String codeKey(String code) {
+        return code == null ? null : code.stripTrailing().toUpperCase(Locale.ROOT);
+    }
+
+    private static boolean isPlainCode(String key) {
+        if (key.length() != 3) return false;
+        for (int i = 0; i < 3; i++) {
+            char ch = key.charAt(i);
+            if (ch < 'A' || ch > 'Z') return false;
+        }
+        return true;
     }
 
 
@@ -103,49 +306,83 @@ public class App {
         // database connection the method returns null and logs a short
         // message — callers can decide how to handle that case.
         if (con == null) { System.out.println("No DB connection."); return null; }
+        if (!mightHaveCity(id)) return null;
         String sql = "SELECT ID, Name, CountryCode, District, Population FROM city WHERE ID = ?";
+        long start = System.nanoTime();
         try (PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, id);
+            City c = null;
             try (ResultSet rs = ps.executeQuery()) {
                 if (rs.next()) {
-                    City c = new City();
-                    c.id = rs.getInt("ID");
-                    c.name = rs.getString("Name");
-                    c.countryCode = rs.getString("CountryCode");
-                    c.district = rs.getString("District");
-                    c.population = rs.getInt("Population");
-                    return c;
+                    c = readCity(rs);
                 }
             }
+            trace(sql, start, c == null ? 0 : 1, id);
+            return c;
         } catch (SQLException e) {
             System.out.println("Failed to get city: " + e.getMessage());
         }
         return null;
     }
 
+    public Map<Integer, City> getCitiesByIds(Collection<Integer> ids) {
+        Map<Integer, City> out = new HashMap<>();
+        // Fetch many cities in one round trip. Used by CityCoalescer to
+        // serve a window of concurrent getCity calls with a single query.
+        if (con == null) { System.out.println("No DB connection."); return out; }
+        if (cityIdFilter != null) {
+            List<Integer> known = new ArrayList<>(ids.size());
+            for (int id : ids) {
+                if (mightHaveCity(id)) known.add(id);
+            }
+            ids = known;
+        }
+        if (ids.isEmpty()) return out;
+        StringBuilder sql = new StringBuilder(
+                "SELECT ID, Name, CountryCode, District, Population FROM city WHERE ID IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        sql.append(')');
+        long start = System.nanoTime();
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            int i = 1;
+            for (int id : ids) {
+                ps.setInt(i++, id);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    City c = readCity(rs);
+                    out.put(c.id, c);
+                }
+            }
+            trace(sql.toString(), start, out.size(), ids.toArray());
+        } catch (SQLException e) {
+            System.out.println("Failed to get cities: " + e.getMessage());
+        }
+        return out;
+    }
+
     public List<City> getTopCitiesInCountry(String countryCode, int limit) {
         List<City> cities = new ArrayList<>();
         // Fetch the most populated cities for a country. A limit of 0 is
         // treated as 1 to avoid returning an excessive result set by
         // mistake.
         if (con == null) { System.out.println("No DB connection."); return cities; }
+        if (!mightHaveCountry(countryCode)) return cities;
         String sql = "SELECT ID, Name, CountryCode, District, Population " +
                 "FROM city WHERE CountryCode = ? " +
                 "ORDER BY Population DESC LIMIT ?";
+        long start = System.nanoTime();
         try (PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setString(1, countryCode);
             ps.setInt(2, Math.max(1, limit));
             try (ResultSet rs = ps.executeQuery()) {
                 while (rs.next()) {
-                    City c = new City();
-                    c.id = rs.getInt("ID");
-                    c.name = rs.getString("Name");
-                    c.countryCode = rs.getString("CountryCode");
-                    c.district = rs.getString("District");
-                    c.population = rs.getInt("Population");
-                    cities.add(c);
+                    cities.add(readCity(rs));
                 }
             }
+            trace(sql, start, cities.size(), countryCode, Math.max(1, limit));
         } catch (SQLException e) {
             System.out.println("Failed to get cities: " + e.getMessage());
         }
@@ -158,6 +395,7 @@ public class App {
         // ranking reports or sanity-checks during development.
         if (con == null) { System.out.println("No DB connection."); return out; }
         String sql = "SELECT Code, Name, Population FROM country ORDER BY Population DESC LIMIT ?";
+        long start = System.nanoTime();
         try (PreparedStatement ps = con.prepareStatement(sql)) {
             ps.setInt(1, Math.max(1, limit));
             try (ResultSet rs = ps.executeQuery()) {
@@ -169,32 +407,173 @@ public class App {
                     out.add(c);
                 }
             }
+            trace(sql, start, out.size(), Math.max(1, limit));
         } catch (SQLException e) {
             System.out.println("Failed to get countries: " + e.getMessage());
         }
         return out;
     }
 
+    // Ranking exports
+    /**
+     * Stream a population ranking of cities to {@code sink}, optionally
+     * restricted to one country. Unlike getTopCitiesInCountry the rows are
+     * read unsorted and ranked client-side by a {@link RankingEngine}, so a
+     * full export (limit 0) runs in a fixed heap budget and does not lean
+     * on the server's sort buffers. Returns the number of rows emitted.
+     */
+    public int exportCityRanking(String countryCode, int limit, Consumer<City> sink) {
+        if (con == null) { System.out.println("No DB connection."); return 0; }
+        if (countryCode != null && !mightHaveCountry(countryCode)) return 0;
+        String sql = "SELECT ID, Name, CountryCode, District, Population FROM city" +
+                (countryCode == null ? "" : " WHERE CountryCode = ?");
+        RankingEngine<City> engine = new RankingEngine<>(
+                RankingEngine.CITY_ORDER, RankingEngine.CITY_IO, rankingMemoryRows, spillDir());
+        long start = System.nanoTime();
+        try (RankingEngine.Session<City> session = engine.open(limit);
+             PreparedStatement ps = streamingStatement(sql)) {
+            if (countryCode != null) ps.setString(1, countryCode);
+            int rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    session.add(readCity(rs));
+                    rows++;
+                }
+            }
+            // Trace only once the streaming result set is closed: MySQL
+            // rejects other statements (such as EXPLAIN) while it is open.
+            if (countryCode == null) trace(sql, start, rows);
+            else trace(sql, start, rows, countryCode);
+            return session.emit(sink);
+        } catch (SQLException | IOException e) {
+            System.out.println("Failed to export city ranking: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    public int exportCountryRanking(int limit, Consumer<Country> sink) {
+        if (con == null) { System.out.println("No DB connection."); return 0; }
+        String sql = "SELECT Code, Name, Population FROM country";
+        RankingEngine<Country> engine = new RankingEngine<>(
+                RankingEngine.COUNTRY_ORDER, RankingEngine.COUNTRY_IO, rankingMemoryRows, spillDir());
+        long start = System.nanoTime();
+        try (RankingEngine.Session<Country> session = engine.open(limit);
+             PreparedStatement ps = streamingStatement(sql)) {
+            int rows = 0;
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Country c = new Country();
+                    c.code = rs.getString("Code");
+                    c.name = rs.getString("Name");
+                    c.population = rs.getLong("Population");
+                    session.add(c);
+                    rows++;
+                }
+            }
+            trace(sql, start, rows);
+            return session.emit(sink);
+        } catch (SQLException | IOException e) {
+            System.out.println("Failed to export country ranking: " + e.getMessage());
+        }
+        return 0;
+    }
+
+    public void setRankingMemoryRows(int rows) {
+        this.rankingMemoryRows = Math.max(1, rows);
+    }
+
+    // Forward-only with fetch size MIN_VALUE makes Connector/J stream rows
+    // one at a time instead of buffering the whole result set in memory.
+    private PreparedStatement streamingStatement(String sql) throws SQLException {
+        PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(Integer.MIN_VALUE);
+        return ps;
+    }
+
+    private static Path spillDir() {
+        return Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
     public List<ContinentPop> getPopulationByContinent() {
         List<ContinentPop> out = new ArrayList<>();
         // Aggregate total population by continent. The result is ordered
         // descending so callers can show the largest continents first.
         if (con == null) { System.out.println("No DB connection."); return out; }
         String sql = "SELECT Continent, SUM(Population) AS Pop FROM country GROUP BY Continent ORDER BY Pop DESC";
-        try (PreparedStatement ps = con.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                ContinentPop cp = new ContinentPop();
-                cp.continent = rs.getString("Continent");
-                cp.population = rs.getLong("Pop");
-                out.add(cp);
+        long start = System.nanoTime();
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    ContinentPop cp = new ContinentPop();
+                    cp.continent = rs.getString("Continent");
+                    cp.population = rs.getLong("Pop");
+                    out.add(cp);
+                }
             }
+            trace(sql, start, out.size());
         } catch (SQLException e) {
             System.out.println("Failed to aggregate population by continent: " + e.getMessage());
         }
         return out;
     }
 
+    // Membership checks: false means the key is certainly absent.
+    private boolean mightHaveCity(int id) {
+        BloomFilter f = cityIdFilter;
+        if (f != null && f.mightContain(id)) return true;
+        return !trustMiss(f);
+    }
+
+    private boolean mightHaveCountry(String code) {
+        BloomFilter f = countryCodeFilter;
+        String key = codeKey(code);
+        if (key == null) return f == null;
+        if (!isPlainCode(key) || (f != null && f.mightContain(key))) return true;
+        return !trustMiss(f);
+    }
+
+    // Whether a filter's "absent" answer can be believed. A missing or
+    // stale filter cannot rule a key out; the lookup goes to the database
+    // and a rebuild is started off the request path.
+    private boolean trustMiss(BloomFilter f) {
+        if (f != null && System.nanoTime() - filtersBuiltAt < filterRefreshMillis * 1_000_000L) return true;
+        rebuildFiltersInBackground();
+        return false;
+    }
+
+    private void rebuildFiltersInBackground() {
+        if (!filtersAttempted || con == null || filterRefreshMillis <= 0) return;
+        if (System.nanoTime() - filtersAttemptedAt < filterRefreshMillis * 1_000_000L) return;
+        if (!filterRebuildRunning.compareAndSet(false, true)) return;
+        Thread t = new Thread(() -> {
+            try {
+                refreshMembershipFilters();
+            } finally {
+                filterRebuildRunning.set(false);
+            }
+        }, "membership-filter-refresh");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // Row mapping
+    private City readCity(ResultSet rs) throws SQLException {
+        City c = new City();
+        c.id = rs.getInt("ID");
+        c.name = rs.getString("Name");
+        c.countryCode = rs.getString("CountryCode");
+        c.district = rs.getString("District");
+        c.population = rs.getInt("Population");
+        return c;
+    }
+
+    // Hand a finished query to the diagnostics, if enabled.
+    private void trace(String sql, long startNanos, int rows, Object... params) {
+        if (diagnostics != null) {
+            diagnostics.afterQuery(con, sql, params, System.nanoTime() - startNanos, rows);
+        }
+    }
+
     // Display helpers
     public void displayCity(City c) {
         // Simple console formatter used by the CLI. In a service you would
@@ -237,6 +616,138 @@ public class App {
         System.out.println();
     }
 
+    // Warm-up
+    /**
+     * Exercise every report method, the console renderers and the binary
+     * encoder so class loading, JIT compilation and driver initialisation
+     * happen before the first real request. Output is discarded.
+     */
+    public void warmUp(int iterations) {
+        PrintStream originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        BufferPool pool = new BufferPool(64 * 1024, 1);
+        long[] rounds = new long[iterations];
+        int completed = 0;
+        try {
+            // Pick real keys from the loaded data where possible so the
+            // same plans and row shapes are warmed as in production.
+            List<Country> countries = getTopCountriesByPopulation(10);
+            List<String> codes = new ArrayList<>();
+            for (Country c : countries) codes.add(c.code);
+            if (codes.isEmpty()) codes.add("GBR");
+            List<Integer> cityIds = new ArrayList<>();
+            for (City c : getTopCitiesInCountry(codes.get(0), 20)) cityIds.add(c.id);
+            if (cityIds.isEmpty()) cityIds.add(1);
+
+            City city = null;
+            List<City> cities = List.of();
+            List<Country> top = countries;
+            List<ContinentPop> pops = List.of();
+            for (int i = 0; i < iterations; i++) {
+                long roundStart = System.nanoTime();
+                if (i % WARMUP_DB_EVERY == 0) {
+                    int n = i / WARMUP_DB_EVERY;
+                    city = getCity(cityIds.get(n % cityIds.size()));
+                    cities = getTopCitiesInCountry(codes.get(n % codes.size()), 10);
+                    top = getTopCountriesByPopulation(10);
+                    pops = getPopulationByContinent();
+                }
+
+                // Without a DB the reports come back empty, so render a
+                // sample row as well to keep the formatting paths covered.
+                if (city == null) city = sampleCity();
+                if (cities.isEmpty()) cities = List.of(city);
+
+                displayCity(city);
+                displayCities(cities);
+                displayCountries(top);
+                displayContinentPops(pops);
+
+                ByteBuffer buf = ResultCodec.encodeCities(cities, pool);
+                ResultCodec.decodeCities(buf);
+                pool.release(buf);
+                buf = ResultCodec.encodeCountries(top, pool);
+                pool.release(buf);
+                buf = ResultCodec.encodeContinentPops(pops, pool);
+                pool.release(buf);
+                rounds[i] = (System.nanoTime() - roundStart) / 1000;
+                completed++;
+            }
+        } catch (RuntimeException e) {
+            // Warm-up is best effort; never stop the app from starting.
+            originalOut.println("Warm-up error: " + e.getMessage());
+        } finally {
+            System.setOut(originalOut);
+        }
+        System.out.println((completed == iterations ? "Warm-up finished: " : "Warm-up stopped after ")
+                + completed + (completed == iterations ? "" : " of " + iterations) + " iterations in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        // Rounds after a failure never ran; leave them out of the figures.
+        reportWarmupConvergence(Arrays.copyOf(rounds, completed));
+    }
+
+    // Compare round latency at the start and end of warm-up. If the last
+    // window is still clearly faster than the one before it, the JIT has
+    // not settled and the first real requests will be slower than steady
+    // state; raise APP_WARMUP_ITERATIONS.
+    private static void reportWarmupConvergence(long[] rounds) {
+        if (rounds.length < 3 * WARMUP_WINDOW) return;
+        long first = windowP99(rounds, 0);
+        long previous = windowP99(rounds, rounds.length - 2 * WARMUP_WINDOW);
+        long last = windowP99(rounds, rounds.length - WARMUP_WINDOW);
+        System.out.println("Warm-up round p99: first " + WARMUP_WINDOW + " = " + first
+                + " us, last " + WARMUP_WINDOW + " = " + last + " us");
+        if (last * 10 < previous * 9) {
+            System.out.println("Warm-up has not converged (previous window p99 " + previous
+                    + " us); consider more iterations");
+        }
+    }
+
+    private static long windowP99(long[] rounds, int from) {
+        LatencyRecorder r = new LatencyRecorder();
+        for (int i = from; i < from + WARMUP_WINDOW; i++) r.record(rounds[i]);
+        return r.percentile(99);
+    }
+
+    private static City sampleCity() {
+        City c = new City();
+        c.id = 1;
+        c.name = "Warmup";
+        c.countryCode = "WRM";
+        c.district = "Warmup";
+        c.population = 1;
+        return c;
+    }
+
+    // Remove a ready file left behind by an earlier run.
+    static void clearReady() {
+        String readyFile = System.getenv("APP_READY_FILE");
+        if (readyFile != null && !readyFile.isBlank()) {
+            try {
+                Files.deleteIfExists(Paths.get(readyFile));
+            } catch (IOException e) {
+                System.out.println("Could not remove ready file: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Signal readiness. Prints a line for log-based checks and, when
+     * APP_READY_FILE is set, creates that file for container health checks.
+     */
+    void markReady() {
+        String readyFile = System.getenv("APP_READY_FILE");
+        if (readyFile != null && !readyFile.isBlank()) {
+            try {
+                Files.writeString(Paths.get(readyFile), "ready\n");
+            } catch (IOException e) {
+                System.out.println("Could not write ready file: " + e.getMessage());
+            }
+        }
+        System.out.println("App ready");
+    }
+
     //  Menu
     private void menu() {
         try (Scanner sc = new Scanner(System.in)) {
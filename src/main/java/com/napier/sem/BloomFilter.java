@@ -0,0 +1,84 @@
+package com.napier.sem;
+
+/**
+ * Fixed-size Bloom filter over integer and string keys.
+ *
+ * Answers "definitely not present" or "maybe present". App uses one for
+ * city IDs and one for country codes so lookups for keys that do not
+ * exist can be answered without a database round trip; a "maybe" still
+ * goes to the database, so false positives only cost the query they
+ * would have cost anyway.
+ *
+ * Bits are derived by double hashing (h1 + i * h2) from a 64-bit mix of
+ * the key. The filter is not synchronised: build it fully, then publish
+ * it and only read from it afterwards.
+ */
+public class BloomFilter {
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(long expectedItems, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        long n = Math.max(1, expectedItems);
+        // Standard sizing: m = -n ln p / (ln 2)^2, k = m/n ln 2.
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.bits = new long[(int) (m / 64)];
+        this.bitCount = m;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void add(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long h1 = mix(key);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    public void add(String key) {
+        add(hash(key));
+    }
+
+    /** A null key is never contained. */
+    public boolean mightContain(String key) {
+        return key != null && mightContain(hash(key));
+    }
+
+    public long sizeInBytes() {
+        return bits.length * 8L;
+    }
+
+    // FNV-1a over the UTF-16 chars; mixed again in add/mightContain.
+    private static long hash(String s) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h;
+    }
+
+    // Finaliser from SplitMix64 / MurmurHash3: spreads nearby IDs across
+    // the whole 64-bit range.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 33)) * 0xFF51AFD7ED558CCDL;
+        z = (z ^ (z >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return z ^ (z >>> 33);
+    }
+}
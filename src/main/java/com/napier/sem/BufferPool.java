@@ -0,0 +1,53 @@
+package com.napier.sem;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small pool of fixed-size direct buffers for encoding report results.
+ *
+ * Buffers are handed out cleared and should be returned with
+ * {@link #release(ByteBuffer)} once the bytes have been written to a
+ * socket or cache. The pool keeps at most {@code maxPooled} idle buffers;
+ * anything beyond that is simply left for the garbage collector.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ConcurrentLinkedQueue<ByteBuffer> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize <= 0) throw new IllegalArgumentException("bufferSize must be positive");
+        this.bufferSize = bufferSize;
+        this.maxPooled = Math.max(0, maxPooled);
+    }
+
+    public int bufferSize() {
+        return bufferSize;
+    }
+
+    public ByteBuffer acquire() {
+        ByteBuffer buf = idle.poll();
+        if (buf == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        idleCount.decrementAndGet();
+        buf.clear();
+        return buf;
+    }
+
+    public void release(ByteBuffer buf) {
+        // Only take back buffers that came from this pool (same capacity);
+        // a foreign buffer would break the fixed-size assumption.
+        if (buf == null || buf.capacity() != bufferSize) return;
+        if (idleCount.incrementAndGet() > maxPooled) {
+            idleCount.decrementAndGet();
+            return;
+        }
+        buf.clear();
+        idle.offer(buf);
+    }
+}
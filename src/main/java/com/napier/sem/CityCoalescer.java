@@ -0,0 +1,163 @@
+package com.napier.sem;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent single-city lookups into batched queries.
+ *
+ * Calls arriving within a short window (or until {@code maxBatch}
+ * distinct IDs are waiting) are sent to the database as one
+ * {@code WHERE ID IN (...)} query, and each caller's future is completed
+ * with its own row, or null if the ID does not exist. Requests for an ID
+ * already waiting in the current window share that lookup; each caller
+ * still gets its own City object.
+ *
+ * Batches are dispatched on one background thread, which also keeps the
+ * App's single connection from being used concurrently.
+ */
+public class CityCoalescer implements AutoCloseable {
+
+    public static final long DEFAULT_WINDOW_MICROS = 200;
+    public static final int DEFAULT_MAX_BATCH = 64;
+
+    private final App app;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final ScheduledExecutorService dispatcher;
+
+    private final Object lock = new Object();
+    private Map<Integer, CompletableFuture<App.City>> pending = new HashMap<>();
+    private ScheduledFuture<?> scheduledFlush = null;
+    private boolean closed = false;
+    private final AtomicLong batches = new AtomicLong();
+
+    public CityCoalescer(App app) {
+        this(app, DEFAULT_WINDOW_MICROS, DEFAULT_MAX_BATCH);
+    }
+
+    public CityCoalescer(App app, long windowMicros, int maxBatch) {
+        if (windowMicros < 0) throw new IllegalArgumentException("windowMicros must not be negative");
+        if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be at least 1");
+        this.app = app;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatch = maxBatch;
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "city-coalescer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Look up a city as part of the next batch. Callers asking for the same
+     * ID in one window each receive their own copy of the row. Fails with
+     * IllegalStateException once the coalescer is closed.
+     */
+    public CompletableFuture<App.City> getCityAsync(int id) {
+        CompletableFuture<App.City> f;
+        synchronized (lock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("CityCoalescer is closed"));
+            }
+            f = pending.get(id);
+            if (f != null) return f.thenApply(CityCoalescer::copy);
+            f = new CompletableFuture<>();
+            pending.put(id, f);
+            if (pending.size() >= maxBatch) {
+                // Batch is full: send it now rather than waiting out the
+                // window. Submitting under the lock means close() cannot
+                // shut the dispatcher down in between.
+                Map<Integer, CompletableFuture<App.City>> batch = takePending();
+                dispatcher.execute(() -> dispatch(batch));
+            } else if (scheduledFlush == null) {
+                scheduledFlush = dispatcher.schedule(this::flushWindow, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        return f;
+    }
+
+    /** Blocking variant with the same contract as {@link App#getCity(int)}. */
+    public App.City getCity(int id) {
+        try {
+            return getCityAsync(id).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            System.out.println("Failed to get city: " + e.getCause().getMessage());
+            return null;
+        }
+    }
+
+    private static App.City copy(App.City c) {
+        if (c == null) return null;
+        App.City out = new App.City();
+        out.id = c.id;
+        out.name = c.name;
+        out.countryCode = c.countryCode;
+        out.district = c.district;
+        out.population = c.population;
+        return out;
+    }
+
+    // Caller must hold lock.
+    private Map<Integer, CompletableFuture<App.City>> takePending() {
+        Map<Integer, CompletableFuture<App.City>> batch = pending;
+        pending = new HashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    private void flushWindow() {
+        Map<Integer, CompletableFuture<App.City>> batch;
+        synchronized (lock) {
+            scheduledFlush = null;
+            batch = pending;
+            pending = new HashMap<>();
+        }
+        if (!batch.isEmpty()) dispatch(batch);
+    }
+
+    /** Number of batched queries sent so far. */
+    public long batchesDispatched() {
+        return batches.get();
+    }
+
+    private void dispatch(Map<Integer, CompletableFuture<App.City>> batch) {
+        batches.incrementAndGet();
+        try {
+            Map<Integer, App.City> rows = app.getCitiesByIds(batch.keySet());
+            for (Map.Entry<Integer, CompletableFuture<App.City>> e : batch.entrySet()) {
+                e.getValue().complete(rows.get(e.getKey()));
+            }
+        } catch (RuntimeException ex) {
+            for (CompletableFuture<App.City> f : batch.values()) {
+                f.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /** Dispatch anything still waiting and stop the background thread. */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            Map<Integer, CompletableFuture<App.City>> batch = takePending();
+            if (!batch.isEmpty()) dispatcher.execute(() -> dispatch(batch));
+        }
+        // No batch can be submitted after this point, as closed is set.
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
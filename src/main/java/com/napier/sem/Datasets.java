@@ -0,0 +1,112 @@
+package com.napier.sem;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Registry of named world datasets hosted by one process.
+ *
+ * Each dataset is an {@link App} with its own connection, so regional
+ * copies of the data can be served side by side instead of running one
+ * container per copy. The report methods here take the dataset key as
+ * their first argument and delegate to the matching App.
+ *
+ * Limitations: a dataset is a single connection, so concurrent callers of
+ * one dataset are serialised. Nothing is cached in memory either; every
+ * report reads from its database and results are not shared between
+ * datasets, even where the data is identical.
+ */
+public class Datasets {
+
+    private final Map<String, App> apps = new LinkedHashMap<>();
+
+    public void add(String key, App app) {
+        if (key == null || key.isBlank()) throw new IllegalArgumentException("Dataset key must not be blank");
+        if (apps.containsKey(key)) throw new IllegalArgumentException("Duplicate dataset: " + key);
+        apps.put(key, app);
+    }
+
+    public void add(String key, String dbUrl, String dbUser, String dbPassword) {
+        add(key, new App(dbUrl, dbUser, dbPassword));
+    }
+
+    /**
+     * Build a registry from a spec of the form
+     * {@code name=jdbcUrl;name2=jdbcUrl2}. All datasets use the same
+     * credentials. Returns null if the spec is empty.
+     */
+    public static Datasets parse(String spec, String dbUser, String dbPassword) {
+        if (spec == null || spec.isBlank()) return null;
+        Datasets ds = new Datasets();
+        for (String entry : spec.split(";")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            int eq = entry.indexOf('=');
+            if (eq <= 0 || eq == entry.length() - 1) {
+                throw new IllegalArgumentException("Expected name=jdbcUrl but got: " + entry);
+            }
+            ds.add(entry.substring(0, eq).trim(), entry.substring(eq + 1).trim(), dbUser, dbPassword);
+        }
+        return ds.apps.isEmpty() ? null : ds;
+    }
+
+    // Reads WORLD_DATASETS, DB_USER and DB_PASS.
+    public static Datasets fromEnv() {
+        Map<String, String> env = System.getenv();
+        return parse(env.get("WORLD_DATASETS"),
+                env.getOrDefault("DB_USER", "root"),
+                env.getOrDefault("DB_PASS", "example"));
+    }
+
+    public App get(String key) {
+        App app = apps.get(key);
+        if (app == null) throw new IllegalArgumentException("Unknown dataset: " + key);
+        return app;
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(apps.keySet());
+    }
+
+    public void connectAll() {
+        for (Map.Entry<String, App> e : apps.entrySet()) {
+            System.out.println("Dataset " + e.getKey() + ":");
+            e.getValue().connect();
+        }
+    }
+
+    public void disconnectAll() {
+        for (App app : apps.values()) {
+            app.disconnect();
+        }
+    }
+
+    // Reports
+    public App.City getCity(String dataset, int id) {
+        return get(dataset).getCity(id);
+    }
+
+    public Map<Integer, App.City> getCitiesByIds(String dataset, Collection<Integer> ids) {
+        return get(dataset).getCitiesByIds(ids);
+    }
+
+    public List<App.City> getTopCitiesInCountry(String dataset, String countryCode, int limit) {
+        return get(dataset).getTopCitiesInCountry(countryCode, limit);
+    }
+
+    public List<App.Country> getTopCountriesByPopulation(String dataset, int limit) {
+        return get(dataset).getTopCountriesByPopulation(limit);
+    }
+
+    public List<App.ContinentPop> getPopulationByContinent(String dataset) {
+        return get(dataset).getPopulationByContinent();
+    }
+
+    public int exportCityRanking(String dataset, String countryCode, int limit, Consumer<App.City> sink) {
+        return get(dataset).exportCityRanking(countryCode, limit, sink);
+    }
+
+    public int exportCountryRanking(String dataset, int limit, Consumer<App.Country> sink) {
+        return get(dataset).exportCountryRanking(limit, sink);
+    }
+}
@@ -0,0 +1,51 @@
+package com.napier.sem;
+
+import java.util.Arrays;
+
+/**
+ * Collects latency samples (in microseconds) and reports percentiles.
+ *
+ * Samples are kept exactly rather than bucketed: a load test run at a few
+ * hundred requests per second for a few minutes is well under a million
+ * samples, and exact values keep the tail percentiles honest.
+ */
+public class LatencyRecorder {
+
+    private long[] samples = new long[1024];
+    private int count = 0;
+    private boolean sorted = true;
+
+    public synchronized void record(long micros) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = micros;
+        sorted = false;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    public synchronized long max() {
+        return count == 0 ? 0 : percentile(100);
+    }
+
+    public synchronized double mean() {
+        if (count == 0) return 0;
+        long sum = 0;
+        for (int i = 0; i < count; i++) sum += samples[i];
+        return (double) sum / count;
+    }
+
+    /** Nearest-rank percentile, p in [0, 100]. Returns 0 when empty. */
+    public synchronized long percentile(double p) {
+        if (count == 0) return 0;
+        if (!sorted) {
+            Arrays.sort(samples, 0, count);
+            sorted = true;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * count);
+        return samples[Math.min(count, Math.max(1, rank)) - 1];
+    }
+}
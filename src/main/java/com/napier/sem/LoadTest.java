@@ -0,0 +1,302 @@
+package com.napier.sem;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load generator for the report methods.
+ *
+ * Requests are issued on a fixed schedule derived from the profile's rate,
+ * whether or not earlier requests have finished. Latency is measured from
+ * each request's intended start time rather than from when a worker picked
+ * it up, so time spent queueing behind a slow backend is counted (the
+ * coordinated-omission correction). Operation choice and parameters come
+ * from a seeded Random on the scheduler thread, so a profile replays the
+ * same request sequence every run.
+ *
+ * Usage: java -cp seMethods.jar com.napier.sem.LoadTest [profile-name-or-path]
+ */
+public class LoadTest {
+
+    public enum Op {
+        GET_CITY("getCity"),
+        TOP_CITIES("topCities"),
+        TOP_COUNTRIES("topCountries"),
+        CONTINENTS("continents");
+
+        final String label;
+
+        Op(String label) {
+            this.label = label;
+        }
+    }
+
+    private final WorkloadProfile profile;
+    private final Map<Op, LatencyRecorder> byOp = new EnumMap<>(Op.class);
+    private final LatencyRecorder overall = new LatencyRecorder();
+    private long maxSchedulerLagMicros = 0;
+    // Shared by all workers when the profile sets getCity.coalesce=true.
+    private CityCoalescer coalescer = null;
+    private long coalescedBatches = 0;
+
+    public LoadTest(WorkloadProfile profile) {
+        this.profile = profile;
+        for (Op op : Op.values()) byOp.put(op, new LatencyRecorder());
+    }
+
+    public static void main(String[] args) {
+        WorkloadProfile profile = WorkloadProfile.load(args.length > 0 ? args[0] : "zipf-mixed");
+        LoadTest lt = new LoadTest(profile);
+        lt.run();
+        lt.report();
+    }
+
+    public LatencyRecorder recorder(Op op) {
+        return byOp.get(op);
+    }
+
+    public LatencyRecorder overall() {
+        return overall;
+    }
+
+    /** Batched queries sent by the coalescer, or 0 if it was not used. */
+    public long coalescedBatches() {
+        return coalescedBatches;
+    }
+
+    public void run() {
+        BlockingQueue<App> apps = new ArrayBlockingQueue<>(profile.connections);
+        List<App> backends = openBackends(profile.connections + (profile.coalesceGetCity ? 1 : 0));
+        App coalescerApp = null;
+        if (profile.coalesceGetCity) {
+            // The coalescer gets a connection of its own so its batches do
+            // not queue behind the other reports.
+            coalescerApp = backends.remove(backends.size() - 1);
+            coalescer = new CityCoalescer(coalescerApp, profile.coalesceWindowMicros, profile.coalesceMaxBatch);
+        }
+        apps.addAll(backends);
+
+        ExecutorService workers = Executors.newFixedThreadPool(profile.connections);
+        Random random = new Random(profile.seed);
+        ZipfGenerator cityIds = new ZipfGenerator(profile.cityIdCount, profile.zipfExponent, random);
+        ZipfGenerator codes = new ZipfGenerator(profile.countryCodes.size(), profile.zipfExponent, random);
+        int[] weights = {profile.getCityWeight, profile.topCitiesWeight,
+                profile.topCountriesWeight, profile.continentsWeight};
+        int totalWeight = Arrays.stream(weights).sum();
+
+        System.out.printf("Running %s: %.0f req/s for %ds (+%ds warm-up) against %s with %d connections%n",
+                profile.name, profile.rate, profile.durationSeconds, profile.warmupSeconds,
+                profile.target, profile.connections);
+
+        long interval = (long) (1_000_000_000L / profile.rate);
+        long start = System.nanoTime() + 10_000_000L;
+        long measureFrom = start + profile.warmupSeconds * 1_000_000_000L;
+        long end = measureFrom + profile.durationSeconds * 1_000_000_000L;
+        try {
+            for (long i = 0; ; i++) {
+                long intended = start + i * interval;
+                if (intended >= end) break;
+
+                Op op = pick(random.nextInt(totalWeight), weights);
+                int cityId = op == Op.GET_CITY ? cityIds.next() : 0;
+                String code = op == Op.TOP_CITIES ? profile.countryCodes.get(codes.next() - 1) : null;
+
+                long now;
+                while ((now = System.nanoTime()) < intended) {
+                    LockSupport.parkNanos(intended - now);
+                }
+                long lag = (now - intended) / 1000;
+                if (lag > maxSchedulerLagMicros) maxSchedulerLagMicros = lag;
+
+                boolean measured = intended >= measureFrom;
+                if (op == Op.GET_CITY && coalescer != null) {
+                    // Submit without tying up a worker, otherwise a batch
+                    // could never hold more lookups than there are workers.
+                    coalescer.getCityAsync(cityId).whenComplete((c, e) -> record(op, intended, measured));
+                    continue;
+                }
+                workers.execute(() -> {
+                    App app = apps.poll();
+                    try {
+                        execute(app, op, cityId, code);
+                    } finally {
+                        apps.offer(app);
+                    }
+                    record(op, intended, measured);
+                });
+            }
+        } finally {
+            workers.shutdown();
+            try {
+                workers.awaitTermination(5, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (coalescer != null) {
+                // close() dispatches what is still waiting and drains the
+                // dispatcher before returning.
+                coalescer.close();
+                coalescedBatches = coalescer.batchesDispatched();
+                coalescerApp.disconnect();
+            }
+            for (App app : apps) app.disconnect();
+        }
+    }
+
+    private void record(Op op, long intended, boolean measured) {
+        if (!measured) return;
+        long micros = (System.nanoTime() - intended) / 1000;
+        byOp.get(op).record(micros);
+        overall.record(micros);
+    }
+
+    private List<App> openBackends(int count) {
+        List<App> apps = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            apps.add(profile.target.equals("standin")
+                    ? new StandIn(profile.standInServiceMicros, profile.seed + i)
+                    : new App(profile.dbUrl, profile.dbUser, profile.dbPass));
+        }
+        if (profile.target.equals("jdbc")) {
+            // connect() waits before its first attempt; open all
+            // connections in parallel so startup stays short.
+            apps.parallelStream().forEach(App::connect);
+        }
+        return apps;
+    }
+
+    private static Op pick(int r, int[] weights) {
+        Op[] ops = Op.values();
+        for (int i = 0; i < weights.length; i++) {
+            if (r < weights[i]) return ops[i];
+            r -= weights[i];
+        }
+        return ops[ops.length - 1];
+    }
+
+    private void execute(App app, Op op, int cityId, String code) {
+        switch (op) {
+            case GET_CITY:
+                app.getCity(cityId);
+                break;
+            case TOP_CITIES:
+                app.getTopCitiesInCountry(code, profile.topCitiesLimit);
+                break;
+            case TOP_COUNTRIES:
+                app.getTopCountriesByPopulation(profile.topCountriesLimit);
+                break;
+            case CONTINENTS:
+                app.getPopulationByContinent();
+                break;
+        }
+    }
+
+    public void report() {
+        System.out.printf("%nAchieved %.1f req/s over %ds (max scheduler lag %d us)%n",
+                overall.count() / (double) profile.durationSeconds, profile.durationSeconds, maxSchedulerLagMicros);
+        System.out.println("Latency in microseconds, measured from intended start time:");
+        System.out.printf("%-14s %-9s %-10s %-10s %-10s %-10s %-10s %-10s%n",
+                "Operation", "Count", "Mean", "p50", "p90", "p99", "p99.9", "Max");
+        for (Op op : Op.values()) {
+            LatencyRecorder r = byOp.get(op);
+            if (r.count() > 0) printRow(op.label, r);
+        }
+        printRow("all", overall);
+        if (profile.coalesceGetCity) {
+            // Includes warm-up traffic, as batches cannot be attributed.
+            System.out.println("getCity coalesced into " + coalescedBatches + " batched queries");
+        }
+        System.out.println();
+    }
+
+    private static void printRow(String label, LatencyRecorder r) {
+        System.out.printf("%-14s %-9d %-10.0f %-10d %-10d %-10d %-10d %-10d%n",
+                label, r.count(), r.mean(), r.percentile(50), r.percentile(90),
+                r.percentile(99), r.percentile(99.9), r.max());
+    }
+
+    /**
+     * In-process stand-in for the database. Each report sleeps for an
+     * exponentially distributed service time and returns a synthetic row,
+     * and calls are serialised per instance like a JDBC connection.
+     */
+    static class StandIn extends App {
+
+        private final long meanServiceNanos;
+        private final Random random;
+
+        StandIn(long meanServiceMicros, long seed) {
+            super("jdbc:standin", "", "");
+            this.meanServiceNanos = meanServiceMicros * 1000;
+            this.random = new Random(seed);
+        }
+
+        private void serve() {
+            long nanos = (long) (-Math.log(1 - random.nextDouble()) * meanServiceNanos);
+            long deadline = System.nanoTime() + nanos;
+            long now;
+            while ((now = System.nanoTime()) < deadline) {
+                LockSupport.parkNanos(deadline - now);
+            }
+        }
+
+        private static City city(int id, String code) {
+            City c = new City();
+            c.id = id;
+            c.name = "City " + id;
+            c.countryCode = code;
+            c.district = "District";
+            c.population = 1_000_000 / id;
+            return c;
+        }
+
+        @Override
+        public synchronized City getCity(int id) {
+            serve();
+            return city(id, "STD");
+        }
+
+        @Override
+        public synchronized Map<Integer, City> getCitiesByIds(Collection<Integer> ids) {
+            serve();
+            Map<Integer, City> out = new HashMap<>();
+            for (int id : ids) out.put(id, city(id, "STD"));
+            return out;
+        }
+
+        @Override
+        public synchronized List<City> getTopCitiesInCountry(String countryCode, int limit) {
+            serve();
+            List<City> out = new ArrayList<>();
+            for (int i = 1; i <= limit; i++) out.add(city(i, countryCode));
+            return out;
+        }
+
+        @Override
+        public synchronized List<Country> getTopCountriesByPopulation(int limit) {
+            serve();
+            List<Country> out = new ArrayList<>();
+            for (int i = 1; i <= limit; i++) {
+                Country c = new Country();
+                c.code = "C" + i;
+                c.name = "Country " + i;
+                c.population = 100_000_000L / i;
+                out.add(c);
+            }
+            return out;
+        }
+
+        @Override
+        public synchronized List<ContinentPop> getPopulationByContinent() {
+            serve();
+            ContinentPop cp = new ContinentPop();
+            cp.continent = "Asia";
+            cp.population = 3_705_025_700L;
+            return List.of(cp);
+        }
+
+        @Override
+        public void connect() {}
+    }
+}
@@ -0,0 +1,147 @@
+package com.napier.sem;
+
+import java.io.PrintStream;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in query diagnostics for the report methods.
+ *
+ * The first time each distinct report query runs on a connection, its
+ * EXPLAIN plan is captured and logged together with any problems spotted
+ * in it (filesorts, full scans, temporary tables) and the index that would
+ * fix them. Every query slower than the threshold is logged with its
+ * parameters and row count.
+ *
+ * Enabled with APP_DIAGNOSTICS=1; APP_SLOW_QUERY_MS sets the threshold
+ * (default 100 ms).
+ */
+public class QueryDiagnostics {
+
+    public static final long DEFAULT_SLOW_QUERY_MILLIS = 100;
+    // Upper bound on remembered plans per connection; the IN (...) lookups
+    // used by CityCoalescer produce one distinct statement per batch size.
+    public static final int MAX_EXPLAINED_PER_CONNECTION = 512;
+
+    private final long slowQueryNanos;
+    private final PrintStream out;
+    // One instance is shared by every dataset, so plans are remembered per
+    // connection. Weak keys let a closed connection's entry go away after a
+    // reconnect.
+    private final Map<Connection, Set<String>> explained = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public QueryDiagnostics(long slowQueryMillis, PrintStream out) {
+        this.slowQueryNanos = slowQueryMillis * 1_000_000L;
+        // Keep our own stream so output is not lost while warm-up has
+        // redirected System.out.
+        this.out = out;
+    }
+
+    /** Returns null unless APP_DIAGNOSTICS is set to 1, true or on. */
+    public static QueryDiagnostics fromEnv() {
+        String flag = System.getenv("APP_DIAGNOSTICS");
+        if (flag == null || !(flag.equals("1") || flag.equalsIgnoreCase("true") || flag.equalsIgnoreCase("on"))) {
+            return null;
+        }
+        long threshold = DEFAULT_SLOW_QUERY_MILLIS;
+        String ms = System.getenv("APP_SLOW_QUERY_MS");
+        if (ms != null && !ms.isBlank()) {
+            try {
+                threshold = Long.parseLong(ms.trim());
+            } catch (NumberFormatException e) {
+                System.out.println("Ignoring invalid APP_SLOW_QUERY_MS: " + ms);
+            }
+        }
+        return new QueryDiagnostics(threshold, System.out);
+    }
+
+    public void afterQuery(Connection con, String sql, Object[] params, long elapsedNanos, int rows) {
+        Set<String> seen = explained.computeIfAbsent(con, c -> ConcurrentHashMap.newKeySet());
+        if (seen.size() < MAX_EXPLAINED_PER_CONNECTION && seen.add(sql)) {
+            explain(con, sql, params);
+        }
+        if (elapsedNanos >= slowQueryNanos) {
+            out.printf("[diag] Slow query: %.1f ms, %d rows: %s params=%s%n",
+                    elapsedNanos / 1_000_000.0, rows, sql, Arrays.toString(params));
+        }
+    }
+
+    private void explain(Connection con, String sql, Object[] params) {
+        List<Map<String, String>> plan = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement("EXPLAIN " + sql)) {
+            for (int i = 0; i < params.length; i++) {
+                ps.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                while (rs.next()) {
+                    Map<String, String> row = new LinkedHashMap<>();
+                    for (int c = 1; c <= md.getColumnCount(); c++) {
+                        row.put(md.getColumnLabel(c), rs.getString(c));
+                    }
+                    plan.add(row);
+                }
+            }
+        } catch (SQLException e) {
+            out.println("[diag] EXPLAIN failed for " + sql + ": " + e.getMessage());
+            return;
+        }
+        out.println("[diag] EXPLAIN " + sql);
+        for (Map<String, String> row : plan) {
+            out.printf("[diag]   table=%s type=%s key=%s rows=%s Extra=%s%n",
+                    row.get("table"), row.get("type"), row.get("key"), row.get("rows"), row.get("Extra"));
+        }
+        for (String finding : analyze(sql, plan)) {
+            out.println("[diag]   ! " + finding);
+        }
+    }
+
+    /**
+     * Look for known-bad plan shapes and suggest an index for them. Plan
+     * rows are keyed by EXPLAIN column name (table, type, key, rows, Extra).
+     */
+    public static List<String> analyze(String sql, List<Map<String, String>> plan) {
+        List<String> findings = new ArrayList<>();
+        for (Map<String, String> row : plan) {
+            String table = row.getOrDefault("table", "");
+            String type = row.getOrDefault("type", "");
+            String extra = Objects.toString(row.get("Extra"), "");
+            String fix = recommendIndex(sql, table);
+            String suffix = fix == null ? "" : "; consider " + fix;
+
+            if (extra.contains("Using filesort")) {
+                findings.add("filesort on " + table + " for ORDER BY" + suffix);
+            }
+            if ("ALL".equalsIgnoreCase(type)) {
+                String rows = row.get("rows");
+                findings.add("full scan on " + table + (rows == null ? "" : " (~" + rows + " rows)")
+                        + (fix == null && !hasWhere(sql) ? " (expected: query reads every row)" : suffix));
+            }
+            if (extra.contains("Using temporary")) {
+                findings.add("temporary table on " + table + suffix);
+            }
+        }
+        return findings;
+    }
+
+    // Covering indexes for the existing reports. InnoDB secondary indexes
+    // carry the primary key, so country (Population, Name) also covers Code.
+    static String recommendIndex(String sql, String table) {
+        String q = sql.toLowerCase(Locale.ROOT);
+        if (table.equalsIgnoreCase("city") && q.contains("countrycode = ?")) {
+            return "CREATE INDEX idx_city_country_pop ON city (CountryCode, Population)";
+        }
+        if (table.equalsIgnoreCase("country") && q.contains("group by continent")) {
+            return "CREATE INDEX idx_country_continent_pop ON country (Continent, Population)";
+        }
+        if (table.equalsIgnoreCase("country") && q.contains("order by population")) {
+            return "CREATE INDEX idx_country_pop_name ON country (Population, Name)";
+        }
+        return null;
+    }
+
+    private static boolean hasWhere(String sql) {
+        return sql.toLowerCase(Locale.ROOT).contains(" where ");
+    }
+}
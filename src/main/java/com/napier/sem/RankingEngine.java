@@ -0,0 +1,324 @@
+package com.napier.sem;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Client-side ranking of a stream of rows within a fixed memory budget.
+ *
+ * Rows are added one at a time as they are read from the database. When
+ * the requested limit fits in the budget, only the best {@code limit}
+ * rows are kept in a bounded heap. Otherwise (including "rank
+ * everything") rows are buffered up to {@code maxRowsInMemory}, sorted and
+ * spilled to temporary run files, and the runs are k-way merged when the
+ * result is emitted. At most {@code maxFanIn} runs are open at once; with
+ * more runs than that, groups are first merged into longer runs in extra
+ * passes. Memory and open files are therefore bounded by the budget and
+ * the fan-in, not by the table size.
+ *
+ * Usage:
+ * <pre>
+ * try (RankingEngine.Session&lt;City&gt; s = engine.open(limit)) {
+ *     while (rs.next()) s.add(readCity(rs));
+ *     s.emit(sink);
+ * }
+ * </pre>
+ */
+public class RankingEngine<T> {
+
+    /** Serialises rows to and from spill files. */
+    public interface RowIO<T> {
+        void write(DataOutputStream out, T row) throws IOException;
+
+        T read(DataInputStream in) throws IOException;
+    }
+
+    // Highest population first; ties broken by key so output is stable.
+    public static final Comparator<App.City> CITY_ORDER =
+            Comparator.comparingInt((App.City c) -> c.population).reversed()
+                    .thenComparingInt(c -> c.id);
+
+    public static final Comparator<App.Country> COUNTRY_ORDER =
+            Comparator.comparingLong((App.Country c) -> c.population).reversed()
+                    .thenComparing(c -> c.code, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    public static final RowIO<App.City> CITY_IO = new RowIO<>() {
+        @Override
+        public void write(DataOutputStream out, App.City c) throws IOException {
+            out.writeInt(c.id);
+            writeString(out, c.name);
+            writeString(out, c.countryCode);
+            writeString(out, c.district);
+            out.writeInt(c.population);
+        }
+
+        @Override
+        public App.City read(DataInputStream in) throws IOException {
+            App.City c = new App.City();
+            c.id = in.readInt();
+            c.name = readString(in);
+            c.countryCode = readString(in);
+            c.district = readString(in);
+            c.population = in.readInt();
+            return c;
+        }
+    };
+
+    public static final RowIO<App.Country> COUNTRY_IO = new RowIO<>() {
+        @Override
+        public void write(DataOutputStream out, App.Country c) throws IOException {
+            writeString(out, c.code);
+            writeString(out, c.name);
+            out.writeLong(c.population);
+        }
+
+        @Override
+        public App.Country read(DataInputStream in) throws IOException {
+            App.Country c = new App.Country();
+            c.code = readString(in);
+            c.name = readString(in);
+            c.population = in.readLong();
+            return c;
+        }
+    };
+
+    private final Comparator<T> order;
+    private final RowIO<T> io;
+    private final int maxRowsInMemory;
+    private final Path spillDir;
+    private final int maxFanIn;
+
+    // Each open run holds a 64 KB read buffer, so 64 runs cost 4 MB.
+    public static final int DEFAULT_MAX_FAN_IN = 64;
+
+    public RankingEngine(Comparator<T> order, RowIO<T> io, int maxRowsInMemory, Path spillDir) {
+        this(order, io, maxRowsInMemory, spillDir, DEFAULT_MAX_FAN_IN);
+    }
+
+    public RankingEngine(Comparator<T> order, RowIO<T> io, int maxRowsInMemory, Path spillDir, int maxFanIn) {
+        if (maxRowsInMemory < 1) throw new IllegalArgumentException("maxRowsInMemory must be at least 1");
+        if (maxFanIn < 2) throw new IllegalArgumentException("maxFanIn must be at least 2");
+        this.order = order;
+        this.io = io;
+        this.maxRowsInMemory = maxRowsInMemory;
+        this.spillDir = spillDir;
+        this.maxFanIn = maxFanIn;
+    }
+
+    /** Start ranking a new stream. A limit of 0 or less means all rows. */
+    public Session<T> open(int limit) {
+        return new Session<>(this, limit <= 0 ? Integer.MAX_VALUE : limit);
+    }
+
+    public static class Session<T> implements AutoCloseable {
+
+        private final RankingEngine<T> engine;
+        private final int limit;
+        // Used when the limit fits the budget: a min-heap (worst row on
+        // top) of the best rows seen so far.
+        private final PriorityQueue<T> heap;
+        private final List<T> buffer;
+        private final List<Path> runs = new ArrayList<>();
+        private int spilledRows = 0;
+        private int mergePasses = 0;
+
+        Session(RankingEngine<T> engine, int limit) {
+            this.engine = engine;
+            this.limit = limit;
+            if (limit <= engine.maxRowsInMemory) {
+                heap = new PriorityQueue<>(Math.min(limit, 1024) + 1, engine.order.reversed());
+                buffer = null;
+            } else {
+                heap = null;
+                buffer = new ArrayList<>();
+            }
+        }
+
+        public void add(T row) throws IOException {
+            if (heap != null) {
+                if (heap.size() < limit) {
+                    heap.add(row);
+                } else if (engine.order.compare(row, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(row);
+                }
+                return;
+            }
+            buffer.add(row);
+            if (buffer.size() >= engine.maxRowsInMemory) {
+                spill();
+            }
+        }
+
+        /** Number of rows written to spill files so far. */
+        public int spilledRows() {
+            return spilledRows;
+        }
+
+        /** Number of merge passes that wrote intermediate runs. */
+        public int mergePasses() {
+            return mergePasses;
+        }
+
+        private void spill() throws IOException {
+            buffer.sort(engine.order);
+            Path run = newRun();
+            try (DataOutputStream out = openRun(run)) {
+                out.writeInt(buffer.size());
+                for (T row : buffer) {
+                    engine.io.write(out, row);
+                }
+            }
+            spilledRows += buffer.size();
+            buffer.clear();
+        }
+
+        private Path newRun() throws IOException {
+            Path run = Files.createTempFile(engine.spillDir, "ranking-", ".run");
+            runs.add(run);
+            return run;
+        }
+
+        private static DataOutputStream openRun(Path run) throws IOException {
+            return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 64 * 1024));
+        }
+
+        /** Emit up to {@code limit} rows in rank order. Returns the count emitted. */
+        public int emit(Consumer<T> sink) throws IOException {
+            if (heap != null) {
+                List<T> out = new ArrayList<>(heap);
+                out.sort(engine.order);
+                out.forEach(sink);
+                return out.size();
+            }
+            if (runs.isEmpty()) {
+                buffer.sort(engine.order);
+                int n = Math.min(limit, buffer.size());
+                for (int i = 0; i < n; i++) sink.accept(buffer.get(i));
+                return n;
+            }
+            if (!buffer.isEmpty()) spill();
+            return merge(sink);
+        }
+
+        private int merge(Consumer<T> sink) throws IOException {
+            // Reduce the number of runs until one final merge can read them
+            // all within the fan-in limit. `runs` keeps every live file so
+            // close() can clean up after a failure part-way through a pass.
+            List<Path> level = new ArrayList<>(runs);
+            while (level.size() > engine.maxFanIn) {
+                List<Path> next = new ArrayList<>();
+                for (int i = 0; i < level.size(); i += engine.maxFanIn) {
+                    List<Path> group = level.subList(i, Math.min(level.size(), i + engine.maxFanIn));
+                    next.add(group.size() == 1 ? group.get(0) : mergeIntoRun(group));
+                }
+                level = next;
+                mergePasses++;
+            }
+            return mergeRuns(level, sink);
+        }
+
+        // Merge a group of runs into one new run, keeping at most limit
+        // rows, and delete the inputs.
+        private Path mergeIntoRun(List<Path> group) throws IOException {
+            Path out = newRun();
+            try (DataOutputStream w = openRun(out)) {
+                long total = 0;
+                for (Path run : group) {
+                    try (DataInputStream in = new DataInputStream(Files.newInputStream(run))) {
+                        total += in.readInt();
+                    }
+                }
+                w.writeInt((int) Math.min(total, limit));
+                IOException[] failure = new IOException[1];
+                mergeRuns(group, row -> {
+                    if (failure[0] != null) return;
+                    try {
+                        engine.io.write(w, row);
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) throw failure[0];
+            } finally {
+                for (Path run : group) Files.deleteIfExists(run);
+                runs.removeAll(group);
+            }
+            return out;
+        }
+
+        private int mergeRuns(List<Path> inputs, Consumer<T> sink) throws IOException {
+            List<RunReader<T>> readers = new ArrayList<>();
+            PriorityQueue<RunReader<T>> pq =
+                    new PriorityQueue<>(Math.max(1, inputs.size()), (a, b) -> engine.order.compare(a.head, b.head));
+            try {
+                for (Path run : inputs) {
+                    RunReader<T> r = new RunReader<>(run, engine.io);
+                    readers.add(r);
+                    if (r.advance()) pq.add(r);
+                }
+                int emitted = 0;
+                while (!pq.isEmpty() && emitted < limit) {
+                    RunReader<T> r = pq.poll();
+                    sink.accept(r.head);
+                    emitted++;
+                    if (r.advance()) pq.add(r);
+                }
+                return emitted;
+            } finally {
+                for (RunReader<T> r : readers) r.close();
+            }
+        }
+
+        /** Delete any spill files. */
+        @Override
+        public void close() {
+            for (Path run : runs) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException ignored) {}
+            }
+            runs.clear();
+        }
+    }
+
+    private static class RunReader<T> implements Closeable {
+        private final DataInputStream in;
+        private final RowIO<T> io;
+        private int remaining;
+        T head;
+
+        RunReader(Path run, RowIO<T> io) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 64 * 1024));
+            this.io = io;
+            this.remaining = in.readInt();
+        }
+
+        boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            head = io.read(in);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,329 @@
+package com.napier.sem;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of the report models for sending results over
+ * sockets or storing them in caches.
+ *
+ * Every message starts with a three byte header (magic, version, kind).
+ * Integers are zig-zag varints so small populations and IDs take one to
+ * three bytes instead of a decimal string. City messages carry a string
+ * dictionary up front and each row refers to its country code and
+ * district by index, because those values repeat heavily in a result set
+ * (every row of a "top cities in GBR" report has the same code).
+ *
+ * Encoding writes straight into the caller's {@link ByteBuffer}; strings
+ * are UTF-8 encoded in place without building intermediate byte arrays.
+ */
+public final class ResultCodec {
+
+    static final byte MAGIC = 0x57; // 'W' for world
+    static final byte VERSION = 1;
+
+    static final byte KIND_CITIES = 1;
+    static final byte KIND_COUNTRIES = 2;
+    static final byte KIND_CONTINENTS = 3;
+
+    private ResultCodec() {}
+
+    // Encoding
+
+    public static int encodeCities(List<App.City> cities, ByteBuffer dst) {
+        int start = dst.position();
+        try {
+            // Build the dictionary in first-seen order so indices stay small
+            // for the values that appear at the top of the report.
+            Map<String, Integer> dict = new LinkedHashMap<>();
+            for (App.City c : cities) {
+                if (c.countryCode != null) dict.putIfAbsent(c.countryCode, dict.size());
+                if (c.district != null) dict.putIfAbsent(c.district, dict.size());
+            }
+            putHeader(dst, KIND_CITIES);
+            putUnsignedVarint(dst, dict.size());
+            for (String s : dict.keySet()) {
+                putString(dst, s);
+            }
+            putUnsignedVarint(dst, cities.size());
+            for (App.City c : cities) {
+                putSignedVarint(dst, c.id);
+                putString(dst, c.name);
+                putDictRef(dst, dict, c.countryCode);
+                putDictRef(dst, dict, c.district);
+                putSignedVarint(dst, c.population);
+            }
+        } catch (BufferOverflowException e) {
+            // Leave the buffer as we found it so the caller can retry
+            // with a bigger one.
+            dst.position(start);
+            throw e;
+        }
+        return dst.position() - start;
+    }
+
+    public static int encodeCountries(List<App.Country> countries, ByteBuffer dst) {
+        int start = dst.position();
+        try {
+            putHeader(dst, KIND_COUNTRIES);
+            putUnsignedVarint(dst, countries.size());
+            for (App.Country c : countries) {
+                putString(dst, c.code);
+                putString(dst, c.name);
+                putSignedVarint(dst, c.population);
+            }
+        } catch (BufferOverflowException e) {
+            dst.position(start);
+            throw e;
+        }
+        return dst.position() - start;
+    }
+
+    public static int encodeContinentPops(List<App.ContinentPop> list, ByteBuffer dst) {
+        int start = dst.position();
+        try {
+            putHeader(dst, KIND_CONTINENTS);
+            putUnsignedVarint(dst, list.size());
+            for (App.ContinentPop cp : list) {
+                putString(dst, cp.continent);
+                putSignedVarint(dst, cp.population);
+            }
+        } catch (BufferOverflowException e) {
+            dst.position(start);
+            throw e;
+        }
+        return dst.position() - start;
+    }
+
+    /**
+     * Encode into a buffer taken from {@code pool}. The returned buffer is
+     * flipped and ready to be written out; hand it back to the pool when
+     * done. If the result does not fit, the buffer is returned to the pool
+     * and {@link BufferOverflowException} is thrown.
+     */
+    public static ByteBuffer encodeCities(List<App.City> cities, BufferPool pool) {
+        ByteBuffer buf = pool.acquire();
+        try {
+            encodeCities(cities, buf);
+        } catch (BufferOverflowException e) {
+            pool.release(buf);
+            throw e;
+        }
+        return buf.flip();
+    }
+
+    public static ByteBuffer encodeCountries(List<App.Country> countries, BufferPool pool) {
+        ByteBuffer buf = pool.acquire();
+        try {
+            encodeCountries(countries, buf);
+        } catch (BufferOverflowException e) {
+            pool.release(buf);
+            throw e;
+        }
+        return buf.flip();
+    }
+
+    public static ByteBuffer encodeContinentPops(List<App.ContinentPop> list, BufferPool pool) {
+        ByteBuffer buf = pool.acquire();
+        try {
+            encodeContinentPops(list, buf);
+        } catch (BufferOverflowException e) {
+            pool.release(buf);
+            throw e;
+        }
+        return buf.flip();
+    }
+
+    // Decoding
+
+    public static List<App.City> decodeCities(ByteBuffer src) {
+        checkHeader(src, KIND_CITIES);
+        int dictSize = getCount(src);
+        String[] dict = new String[dictSize];
+        for (int i = 0; i < dictSize; i++) {
+            dict[i] = getString(src);
+        }
+        int count = getCount(src);
+        List<App.City> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            App.City c = new App.City();
+            c.id = (int) getSignedVarint(src);
+            c.name = getString(src);
+            c.countryCode = getDictRef(src, dict);
+            c.district = getDictRef(src, dict);
+            c.population = (int) getSignedVarint(src);
+            out.add(c);
+        }
+        return out;
+    }
+
+    public static List<App.Country> decodeCountries(ByteBuffer src) {
+        checkHeader(src, KIND_COUNTRIES);
+        int count = getCount(src);
+        List<App.Country> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            App.Country c = new App.Country();
+            c.code = getString(src);
+            c.name = getString(src);
+            c.population = getSignedVarint(src);
+            out.add(c);
+        }
+        return out;
+    }
+
+    public static List<App.ContinentPop> decodeContinentPops(ByteBuffer src) {
+        checkHeader(src, KIND_CONTINENTS);
+        int count = getCount(src);
+        List<App.ContinentPop> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            App.ContinentPop cp = new App.ContinentPop();
+            cp.continent = getString(src);
+            cp.population = getSignedVarint(src);
+            out.add(cp);
+        }
+        return out;
+    }
+
+    // Primitives
+
+    private static void putHeader(ByteBuffer dst, byte kind) {
+        dst.put(MAGIC).put(VERSION).put(kind);
+    }
+
+    private static void checkHeader(ByteBuffer src, byte kind) {
+        byte magic = src.get();
+        byte version = src.get();
+        byte k = src.get();
+        if (magic != MAGIC || version != VERSION) {
+            throw new IllegalArgumentException("Not a result message (magic " + magic + ", version " + version + ")");
+        }
+        if (k != kind) {
+            throw new IllegalArgumentException("Expected message kind " + kind + " but found " + k);
+        }
+    }
+
+    static void putUnsignedVarint(ByteBuffer dst, long v) {
+        while ((v & ~0x7FL) != 0) {
+            dst.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        dst.put((byte) v);
+    }
+
+    static void putSignedVarint(ByteBuffer dst, long v) {
+        putUnsignedVarint(dst, (v << 1) ^ (v >> 63));
+    }
+
+    static long getUnsignedVarintLong(ByteBuffer src) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = src.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return result;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static int getUnsignedVarint(ByteBuffer src) {
+        long v = getUnsignedVarintLong(src);
+        if (v > Integer.MAX_VALUE) throw new IllegalArgumentException("Length out of range: " + v);
+        return (int) v;
+    }
+
+    // Every entry takes at least one byte, so a count larger than what is
+    // left in the buffer is malformed; reject it before sizing a list.
+    private static int getCount(ByteBuffer src) {
+        int count = getUnsignedVarint(src);
+        if (count > src.remaining()) {
+            throw new IllegalArgumentException("Entry count " + count + " exceeds remaining " + src.remaining() + " bytes");
+        }
+        return count;
+    }
+
+    static long getSignedVarint(ByteBuffer src) {
+        long v = getUnsignedVarintLong(src);
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    private static void putDictRef(ByteBuffer dst, Map<String, Integer> dict, String s) {
+        // 0 is reserved for null so that missing districts survive a round trip.
+        putUnsignedVarint(dst, s == null ? 0 : dict.get(s) + 1);
+    }
+
+    private static String getDictRef(ByteBuffer src, String[] dict) {
+        int ref = getUnsignedVarint(src);
+        if (ref == 0) return null;
+        if (ref > dict.length) throw new IllegalArgumentException("Dictionary index out of range: " + ref);
+        return dict[ref - 1];
+    }
+
+    /** Length-prefixed UTF-8; the prefix is byte length + 1 so 0 can mean null. */
+    private static void putString(ByteBuffer dst, String s) {
+        if (s == null) { putUnsignedVarint(dst, 0); return; }
+        putUnsignedVarint(dst, utf8Length(s) + 1L);
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                dst.put((byte) ch);
+            } else if (ch < 0x800) {
+                dst.put((byte) (0xC0 | (ch >> 6)));
+                dst.put((byte) (0x80 | (ch & 0x3F)));
+            } else if (Character.isHighSurrogate(ch) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(ch, s.charAt(++i));
+                dst.put((byte) (0xF0 | (cp >> 18)));
+                dst.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                dst.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                dst.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                // Lone surrogates are written as '?' to match String.getBytes(UTF_8).
+                if (Character.isSurrogate(ch)) ch = '?';
+                if (ch < 0x80) {
+                    dst.put((byte) ch);
+                } else {
+                    dst.put((byte) (0xE0 | (ch >> 12)));
+                    dst.put((byte) (0x80 | ((ch >> 6) & 0x3F)));
+                    dst.put((byte) (0x80 | (ch & 0x3F)));
+                }
+            }
+        }
+    }
+
+    static int utf8Length(String s) {
+        int len = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch < 0x80) {
+                len += 1;
+            } else if (ch < 0x800) {
+                len += 2;
+            } else if (Character.isHighSurrogate(ch) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                len += 4;
+                i++;
+            } else {
+                len += Character.isSurrogate(ch) ? 1 : 3;
+            }
+        }
+        return len;
+    }
+
+    private static String getString(ByteBuffer src) {
+        int prefix = getUnsignedVarint(src);
+        if (prefix == 0) return null;
+        int len = prefix - 1;
+        if (len > src.remaining()) throw new BufferUnderflowException();
+        if (src.hasArray()) {
+            // Heap buffers can be decoded without copying the bytes out first.
+            String s = new String(src.array(), src.arrayOffset() + src.position(), len, StandardCharsets.UTF_8);
+            src.position(src.position() + len);
+            return s;
+        }
+        byte[] bytes = new byte[len];
+        src.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
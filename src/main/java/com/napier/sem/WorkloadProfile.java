@@ -0,0 +1,146 @@
+package com.napier.sem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Declarative description of a load test run, read from a properties
+ * file. Built-in profiles live under {@code loadtest/} on the classpath
+ * and can be referred to by name (e.g. "zipf-mixed"); anything else is
+ * treated as a path. DB_URL, DB_USER and DB_PASS override the profile's
+ * connection settings, matching the integration tests.
+ */
+public class WorkloadProfile {
+
+    public String name;
+    // "jdbc" runs against a MySQL server, "standin" against an in-process
+    // stand-in with a simulated service time.
+    public String target;
+    public double rate;
+    public int durationSeconds;
+    public int warmupSeconds;
+    public int connections;
+    public long seed;
+
+    // Relative weights of each report in the mix.
+    public int getCityWeight;
+    public int topCitiesWeight;
+    public int topCountriesWeight;
+    public int continentsWeight;
+
+    // Route getCity through a shared CityCoalescer instead of calling
+    // App.getCity directly.
+    public boolean coalesceGetCity;
+    public long coalesceWindowMicros;
+    public int coalesceMaxBatch;
+
+    public int cityIdCount;
+    public double zipfExponent;
+    public List<String> countryCodes;
+    public int topCitiesLimit;
+    public int topCountriesLimit;
+
+    public long standInServiceMicros;
+
+    public String dbUrl;
+    public String dbUser;
+    public String dbPass;
+
+    public static WorkloadProfile load(String nameOrPath) {
+        Properties p = new Properties();
+        Path path = Paths.get(nameOrPath);
+        try {
+            if (Files.isRegularFile(path)) {
+                try (Reader r = Files.newBufferedReader(path)) {
+                    p.load(r);
+                }
+            } else {
+                String resource = "loadtest/" + nameOrPath + ".properties";
+                try (InputStream in = WorkloadProfile.class.getClassLoader().getResourceAsStream(resource)) {
+                    if (in == null) throw new IllegalArgumentException("No such workload profile: " + nameOrPath);
+                    p.load(in);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read workload profile " + nameOrPath + ": " + e.getMessage(), e);
+        }
+        if (!p.containsKey("name")) p.setProperty("name", nameOrPath);
+        return from(p, System.getenv());
+    }
+
+    public static WorkloadProfile from(Properties p, Map<String, String> env) {
+        WorkloadProfile w = new WorkloadProfile();
+        w.name = p.getProperty("name", "unnamed");
+        w.target = p.getProperty("target", "jdbc").trim();
+        if (!w.target.equals("jdbc") && !w.target.equals("standin")) {
+            throw new IllegalArgumentException("target must be jdbc or standin, got: " + w.target);
+        }
+        w.rate = positive(p, "rate", 100);
+        // LoadTest schedules in whole nanoseconds; a zero interval would
+        // never advance the schedule.
+        if ((long) (1_000_000_000L / w.rate) == 0) {
+            throw new IllegalArgumentException("rate must be at most 1e9 requests per second");
+        }
+        w.durationSeconds = (int) positive(p, "duration.seconds", 30);
+        w.warmupSeconds = (int) number(p, "warmup.seconds", 5);
+        w.connections = (int) positive(p, "connections", 4);
+        w.seed = (long) number(p, "seed", 42);
+
+        w.getCityWeight = weight(p, "mix.getCity");
+        w.topCitiesWeight = weight(p, "mix.topCities");
+        w.topCountriesWeight = weight(p, "mix.topCountries");
+        w.continentsWeight = weight(p, "mix.continents");
+        if (w.getCityWeight + w.topCitiesWeight + w.topCountriesWeight + w.continentsWeight <= 0) {
+            throw new IllegalArgumentException("At least one mix.* weight must be positive");
+        }
+
+        w.coalesceGetCity = Boolean.parseBoolean(p.getProperty("getCity.coalesce", "false").trim());
+        w.coalesceWindowMicros = (long) number(p, "getCity.coalesce.windowMicros", CityCoalescer.DEFAULT_WINDOW_MICROS);
+        w.coalesceMaxBatch = (int) positive(p, "getCity.coalesce.maxBatch", CityCoalescer.DEFAULT_MAX_BATCH);
+
+        w.cityIdCount = (int) positive(p, "city.ids", 4079);
+        w.zipfExponent = number(p, "zipf.exponent", 0.99);
+        w.countryCodes = new ArrayList<>();
+        for (String code : p.getProperty("topCities.codes", "CHN,IND,USA,BRA,GBR").split(",")) {
+            if (!code.isBlank()) w.countryCodes.add(code.trim().toUpperCase());
+        }
+        if (w.countryCodes.isEmpty()) throw new IllegalArgumentException("topCities.codes must not be empty");
+        w.topCitiesLimit = (int) positive(p, "topCities.limit", 10);
+        w.topCountriesLimit = (int) positive(p, "topCountries.limit", 10);
+
+        w.standInServiceMicros = (long) number(p, "standin.serviceMicros", 500);
+
+        w.dbUrl = env.getOrDefault("DB_URL", p.getProperty("db.url",
+                "jdbc:mysql://localhost:33060/world?allowPublicKeyRetrieval=true&useSSL=false&serverTimezone=UTC"));
+        w.dbUser = env.getOrDefault("DB_USER", p.getProperty("db.user", "root"));
+        w.dbPass = env.getOrDefault("DB_PASS", p.getProperty("db.pass", "example"));
+        return w;
+    }
+
+    private static double number(Properties p, String key, double def) {
+        String v = p.getProperty(key);
+        if (v == null || v.isBlank()) return def;
+        try {
+            return Double.parseDouble(v.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + v);
+        }
+    }
+
+    private static int weight(Properties p, String key) {
+        double v = number(p, key, 0);
+        if (v < 0) throw new IllegalArgumentException(key + " must not be negative");
+        return (int) v;
+    }
+
+    private static double positive(Properties p, String key, double def) {
+        double v = number(p, key, def);
+        if (v <= 0) throw new IllegalArgumentException(key + " must be positive");
+        return v;
+    }
+}
@@ -0,0 +1,44 @@
+package com.napier.sem;
+
+import java.util.Random;
+
+/**
+ * Draws ranks 1..n with a Zipfian distribution: rank k is chosen with
+ * probability proportional to 1 / k^exponent. Used by the load test to
+ * model a few very hot city IDs and a long tail of cold ones.
+ *
+ * The CDF is precomputed, so sampling is a binary search; for the world
+ * database (about 4k cities) the table is tiny.
+ */
+public class ZipfGenerator {
+
+    private final double[] cdf;
+    private final Random random;
+
+    public ZipfGenerator(int n, double exponent, Random random) {
+        if (n < 1) throw new IllegalArgumentException("n must be at least 1");
+        if (exponent < 0) throw new IllegalArgumentException("exponent must not be negative");
+        this.random = random;
+        this.cdf = new double[n];
+        double sum = 0;
+        for (int k = 1; k <= n; k++) {
+            sum += 1.0 / Math.pow(k, exponent);
+            cdf[k - 1] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    public int next() {
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo + 1;
+    }
+}
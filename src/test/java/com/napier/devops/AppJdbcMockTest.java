@@ -127,4 +127,257 @@ class AppJdbcMockTest {
         assertEquals(1, list.size());
         assertEquals("Europe", list.get(0).continent);
     }
+
+    @Test
+    void getCitiesByIds_bindsEveryIdAndMapsRowsById() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, true, false);
+        when(rs.getInt("ID")).thenReturn(7, 3);
+        when(rs.getString("Name")).thenReturn("Seven", "Three");
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+
+        java.util.Map<Integer, App.City> out = app.getCitiesByIds(List.of(3, 7, 11));
+        assertEquals(2, out.size());
+        assertEquals("Seven", out.get(7).name);
+        assertEquals("Three", out.get(3).name);
+        assertNull(out.get(11));
+
+        verify(con).prepareStatement(
+                "SELECT ID, Name, CountryCode, District, Population FROM city WHERE ID IN (?,?,?)");
+        verify(ps).setInt(1, 3);
+        verify(ps).setInt(2, 7);
+        verify(ps).setInt(3, 11);
+    }
+
+    @Test
+    void exportCityRanking_streamsUnsortedRowsAndRanksClientSide() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+
+        when(con.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, true, true, false);
+        when(rs.getInt("ID")).thenReturn(1, 2, 3);
+        when(rs.getString("CountryCode")).thenReturn("GBR");
+        when(rs.getInt("Population")).thenReturn(100, 300, 200);
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+
+        List<App.City> out = new java.util.ArrayList<>();
+        int n = app.exportCityRanking("GBR", 2, out::add);
+        assertEquals(2, n);
+        assertEquals(2, out.get(0).id);
+        assertEquals(3, out.get(1).id);
+
+        verify(con).prepareStatement(
+                "SELECT ID, Name, CountryCode, District, Population FROM city WHERE CountryCode = ?",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        verify(ps).setFetchSize(Integer.MIN_VALUE);
+        verify(ps).setString(1, "GBR");
+    }
+
+    @Test
+    void exportCountryRanking_spillsWhenOverBudgetAndEmitsInRankOrder() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+
+        when(con.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, true, true, true, false);
+        when(rs.getString("Code")).thenReturn("AAA", "BBB", "CCC", "DDD");
+        when(rs.getString("Name")).thenReturn("A", "B", "C", "D");
+        when(rs.getLong("Population")).thenReturn(10L, 40L, 20L, 30L);
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        // Two rows in memory forces the spill-and-merge path.
+        app.setRankingMemoryRows(2);
+
+        List<App.Country> out = new java.util.ArrayList<>();
+        int n = app.exportCountryRanking(0, out::add);
+        assertEquals(4, n);
+        assertEquals("BBB", out.get(0).code);
+        assertEquals("B", out.get(0).name);
+        assertEquals(40L, out.get(0).population);
+        assertEquals("DDD", out.get(1).code);
+        assertEquals("CCC", out.get(2).code);
+        assertEquals("AAA", out.get(3).code);
+
+        verify(con).prepareStatement("SELECT Code, Name, Population FROM country",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        verify(ps).setFetchSize(Integer.MIN_VALUE);
+    }
+
+    @Test
+    void membershipFilters_answerDefiniteMissesWithoutQuerying() throws Exception {
+        Connection con = mock(Connection.class);
+        java.sql.Statement st = mock(java.sql.Statement.class);
+        ResultSet ids = mock(ResultSet.class);
+        ResultSet codes = mock(ResultSet.class);
+
+        when(con.createStatement()).thenReturn(st);
+        when(st.executeQuery("SELECT ID FROM city")).thenReturn(ids);
+        when(st.executeQuery("SELECT Code FROM country")).thenReturn(codes);
+        when(ids.next()).thenReturn(true, true, false);
+        when(ids.getInt(1)).thenReturn(1, 2);
+        when(codes.next()).thenReturn(true, false);
+        when(codes.getString(1)).thenReturn("GBR");
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        app.refreshMembershipFilters();
+
+        assertNull(app.getCity(999999));
+        assertTrue(app.getTopCitiesInCountry("XYZ", 5).isEmpty());
+        assertTrue(app.getCitiesByIds(List.of(999998, 999999)).isEmpty());
+        verify(con, never()).prepareStatement(anyString());
+
+        // Known keys still go to the database; codes match case-insensitively.
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+        app.getCity(2);
+        app.getTopCitiesInCountry("gbr", 5);
+        verify(con, times(2)).prepareStatement(anyString());
+    }
+
+    @Test
+    void membershipFilters_loadFailure_fallsBackToDatabase() throws Exception {
+        Connection con = mock(Connection.class);
+        when(con.createStatement()).thenThrow(new SQLException("boom"));
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        app.refreshMembershipFilters();
+
+        assertNull(app.getCity(999999));
+        verify(ps).setInt(1, 999999);
+    }
+
+    @Test
+    void membershipFilters_staleMissGoesToDatabase_andRebuildsInBackground() throws Exception {
+        Connection con = mock(Connection.class);
+        java.sql.Statement st = mock(java.sql.Statement.class);
+        ResultSet before = mock(ResultSet.class);
+        ResultSet after = mock(ResultSet.class);
+        ResultSet codes = mock(ResultSet.class);
+
+        when(con.createStatement()).thenReturn(st);
+        when(st.executeQuery("SELECT ID FROM city")).thenReturn(before, after);
+        when(st.executeQuery("SELECT Code FROM country")).thenReturn(codes);
+        when(before.next()).thenReturn(true, false);
+        when(before.getInt(1)).thenReturn(1);
+        // City 4080 is inserted after the first build.
+        when(after.next()).thenReturn(true, true, false);
+        when(after.getInt(1)).thenReturn(1, 4080);
+        when(codes.next()).thenReturn(false);
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        app.setFilterRefreshInterval(1);
+        app.refreshMembershipFilters();
+
+        Thread.sleep(5);
+        // The stale filter does not answer the miss; the caller goes
+        // straight to the database while the rebuild runs elsewhere.
+        app.getCity(4080);
+        verify(ps).setInt(1, 4080);
+        verify(st, timeout(2000).times(2)).executeQuery("SELECT ID FROM city");
+    }
+
+    @Test
+    void membershipFilters_failedFirstLoad_isRetriedOnALaterMiss() throws Exception {
+        Connection con = mock(Connection.class);
+        java.sql.Statement st = mock(java.sql.Statement.class);
+        ResultSet ids = mock(ResultSet.class);
+        ResultSet codes = mock(ResultSet.class);
+
+        when(con.createStatement()).thenThrow(new SQLException("timeout")).thenReturn(st);
+        when(st.executeQuery("SELECT ID FROM city")).thenReturn(ids);
+        when(st.executeQuery("SELECT Code FROM country")).thenReturn(codes);
+        when(ids.next()).thenReturn(true, false);
+        when(ids.getInt(1)).thenReturn(1);
+        when(codes.next()).thenReturn(true, false);
+        when(codes.getString(1)).thenReturn("GBR");
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        app.setFilterRefreshInterval(1);
+        app.refreshMembershipFilters();
+        assertFalse(app.hasMembershipFilters());
+
+        Thread.sleep(5);
+        app.getCity(999998);
+        verify(ps).setInt(1, 999998);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!app.hasMembershipFilters() && System.currentTimeMillis() < deadline) Thread.sleep(5);
+        assertTrue(app.hasMembershipFilters(), "A later miss should have reloaded the filters");
+
+        // Once loaded and fresh, misses are answered without a query.
+        app.setFilterRefreshInterval(60_000);
+        app.getCity(999999);
+        verify(ps, never()).setInt(1, 999999);
+    }
+
+    @Test
+    void membershipFilters_leaveNonAsciiCodesAndDisabledFiltersToTheDatabase() throws Exception {
+        Connection con = mock(Connection.class);
+        java.sql.Statement st = mock(java.sql.Statement.class);
+        ResultSet ids = mock(ResultSet.class);
+        ResultSet codes = mock(ResultSet.class);
+
+        when(con.createStatement()).thenReturn(st);
+        when(st.executeQuery("SELECT ID FROM city")).thenReturn(ids);
+        when(st.executeQuery("SELECT Code FROM country")).thenReturn(codes);
+        when(ids.next()).thenReturn(false);
+        when(codes.next()).thenReturn(true, false);
+        when(codes.getString(1)).thenReturn("ESP");
+
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(false);
+
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        app.refreshMembershipFilters();
+
+        // An accent-insensitive collation may match this to ESP.
+        app.getTopCitiesInCountry("\u00C9SP", 5);
+        verify(ps).setString(1, "\u00C9SP");
+
+        app.setFilterRefreshInterval(0);
+        app.getCity(999999);
+        verify(ps).setInt(1, 999999);
+    }
 }
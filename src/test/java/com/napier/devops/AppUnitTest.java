@@ -195,4 +195,45 @@ class AppUnitTest {
         assertTrue(pops.isEmpty());
         assertTrue(out.contains("No DB connection."));
     }
-}
\ No newline at end of file
+
+    // -------- Warm-up --------
+
+    @Test
+    void warmUp_noConnection_discardsOutputAndRestoresStdout() {
+        PrintStream captured = System.out;
+        app.warmUp(3);
+        String out = outContent.toString();
+        assertSame(captured, System.out);
+        assertFalse(out.contains("No DB connection."), "Report output should be discarded during warm-up");
+        assertTrue(out.contains("Warm-up finished: 3 iterations"));
+    }
+
+    @Test
+    void warmUp_reportsEarlyAndLateRoundLatency() {
+        app.warmUp(1500);
+        String out = outContent.toString();
+        assertTrue(out.contains("Warm-up round p99: first 500 = "), out);
+        assertTrue(out.contains("last 500 = "));
+    }
+
+    @Test
+    void warmUp_stoppedEarly_reportsOnlyCompletedRounds() {
+        App failing = new App("jdbc:invalid", "u", "p") {
+            private int calls = 0;
+
+            @Override
+            public void displayCity(App.City city) {
+                if (++calls > 1600) throw new IllegalStateException("boom");
+                super.displayCity(city);
+            }
+        };
+        failing.warmUp(3000);
+        String out = outContent.toString();
+        assertTrue(out.contains("Warm-up error: boom"), out);
+        assertTrue(out.contains("Warm-up stopped after 1600 of 3000 iterations"), out);
+        // 1600 completed rounds are enough for the convergence report, and
+        // none of the 1400 rounds that never ran are counted as 0 us.
+        assertTrue(out.contains("Warm-up round p99"), out);
+        assertFalse(out.contains("last 500 = 0 us"), out);
+    }
+}
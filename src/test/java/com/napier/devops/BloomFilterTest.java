@@ -0,0 +1,48 @@
+package com.napier.devops;
+
+import com.napier.sem.BloomFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the membership filter: no false negatives, and a false
+ * positive rate close to the configured one.
+ */
+class BloomFilterTest {
+
+    @Test
+    void cityIds_haveNoFalseNegatives_andFewFalsePositives() {
+        BloomFilter f = new BloomFilter(4079, 0.001);
+        for (int id = 1; id <= 4079; id++) f.add(id);
+
+        for (int id = 1; id <= 4079; id++) {
+            assertTrue(f.mightContain(id), "id " + id);
+        }
+        int falsePositives = 0;
+        for (int id = 5000; id < 105_000; id++) {
+            if (f.mightContain(id)) falsePositives++;
+        }
+        // Expect about 100 in 100k at 0.1%; allow generous slack.
+        assertTrue(falsePositives < 400, "falsePositives=" + falsePositives);
+        assertTrue(f.sizeInBytes() < 16 * 1024, "Filter for 4k IDs should stay small");
+    }
+
+    @Test
+    void stringKeys_andNull() {
+        BloomFilter f = new BloomFilter(3, 0.001);
+        f.add("GBR");
+        f.add("FRA");
+        f.add("USA");
+        assertTrue(f.mightContain("GBR"));
+        assertTrue(f.mightContain("USA"));
+        assertFalse(f.mightContain("XXX"));
+        assertFalse(f.mightContain((String) null));
+    }
+
+    @Test
+    void invalidRate_isRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 0));
+        assertThrows(IllegalArgumentException.class, () -> new BloomFilter(10, 1));
+    }
+}
@@ -0,0 +1,172 @@
+package com.napier.devops;
+
+import com.napier.sem.App;
+import com.napier.sem.CityCoalescer;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests that concurrent getCity calls are folded into batched IN queries.
+ * JDBC is mocked; the mocked result set returns cities 1..3 for any batch.
+ */
+class CityCoalescerTest {
+
+    private void injectConnection(App app, Connection con) throws Exception {
+        java.lang.reflect.Field f = App.class.getDeclaredField("con");
+        f.setAccessible(true);
+        f.set(app, con);
+    }
+
+    private Connection mockConnection() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenAnswer(inv -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.next()).thenReturn(true, true, true, false);
+            when(rs.getInt("ID")).thenReturn(1, 2, 3);
+            when(rs.getString("Name")).thenReturn("A", "B", "C");
+            when(rs.getInt("Population")).thenReturn(10, 20, 30);
+            return rs;
+        });
+        return con;
+    }
+
+    @Test
+    void concurrentCalls_shareOneQuery_andDeduplicateIds() throws Exception {
+        Connection con = mockConnection();
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+
+        int[] ids = {1, 2, 3, 2, 1, 999, 3, 1};
+        ExecutorService pool = Executors.newFixedThreadPool(ids.length);
+        CountDownLatch start = new CountDownLatch(1);
+        try (CityCoalescer coalescer = new CityCoalescer(app, 200_000, 100)) {
+            List<CompletableFuture<App.City>> results = new ArrayList<>();
+            for (int id : ids) {
+                results.add(CompletableFuture.supplyAsync(() -> {
+                    try { start.await(); } catch (InterruptedException ignored) {}
+                    return coalescer.getCity(id);
+                }, pool));
+            }
+            start.countDown();
+            for (int i = 0; i < ids.length; i++) {
+                App.City c = results.get(i).get(5, TimeUnit.SECONDS);
+                if (ids[i] == 999) {
+                    assertNull(c);
+                } else {
+                    assertEquals(ids[i], c.id);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        verify(con, times(1)).prepareStatement(
+                "SELECT ID, Name, CountryCode, District, Population FROM city WHERE ID IN (?,?,?,?)");
+    }
+
+    @Test
+    void fullBatch_isDispatchedWithoutWaitingForWindow() throws Exception {
+        Connection con = mockConnection();
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+
+        // A one-minute window would time the test out if the size trigger
+        // did not fire.
+        try (CityCoalescer coalescer = new CityCoalescer(app, 60_000_000, 2)) {
+            CompletableFuture<App.City> a = coalescer.getCityAsync(1);
+            CompletableFuture<App.City> b = coalescer.getCityAsync(2);
+            assertEquals(1, a.get(5, TimeUnit.SECONDS).id);
+            assertEquals(2, b.get(5, TimeUnit.SECONDS).id);
+        }
+    }
+
+    @Test
+    void noConnection_completesWithNull() {
+        App app = new App("jdbc:mock", "u", "p");
+        try (CityCoalescer coalescer = new CityCoalescer(app)) {
+            assertNull(coalescer.getCity(1));
+        }
+    }
+
+    @Test
+    void duplicateIds_getSeparateCopies() throws Exception {
+        Connection con = mockConnection();
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+
+        try (CityCoalescer coalescer = new CityCoalescer(app, 60_000_000, 2)) {
+            CompletableFuture<App.City> a = coalescer.getCityAsync(1);
+            CompletableFuture<App.City> b = coalescer.getCityAsync(1);
+            coalescer.getCityAsync(2);
+            App.City ca = a.get(5, TimeUnit.SECONDS);
+            App.City cb = b.get(5, TimeUnit.SECONDS);
+            assertNotSame(ca, cb);
+            ca.name = "changed";
+            assertEquals("A", cb.name);
+        }
+    }
+
+    @Test
+    void afterClose_requestsFailFast() {
+        App app = new App("jdbc:mock", "u", "p");
+        CityCoalescer coalescer = new CityCoalescer(app);
+        coalescer.close();
+        CompletableFuture<App.City> f = coalescer.getCityAsync(1);
+        assertTrue(f.isCompletedExceptionally());
+        assertNull(coalescer.getCity(1));
+    }
+
+    @Test
+    void closeRacingFullBatches_leavesNoFutureIncomplete() throws Exception {
+        Connection con = mockConnection();
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 100; round++) {
+                // Batches of two fill on every other call, so submissions
+                // keep racing close().
+                CityCoalescer coalescer = new CityCoalescer(app, 1_000_000, 2);
+                List<CompletableFuture<App.City>> results = java.util.Collections.synchronizedList(new ArrayList<>());
+                CountDownLatch start = new CountDownLatch(1);
+                List<java.util.concurrent.Future<?>> callers = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    int base = t * 1000;
+                    callers.add(pool.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 100; i++) {
+                            results.add(coalescer.getCityAsync(base + i % 3));
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                // Close while the callers are mid-stream.
+                while (results.size() < 20) Thread.onSpinWait();
+                coalescer.close();
+                for (java.util.concurrent.Future<?> c : callers) c.get(10, TimeUnit.SECONDS);
+                for (CompletableFuture<App.City> f : results) {
+                    assertTrue(f.isDone(), "Every request must complete or fail once closed");
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.napier.devops;
+
+import com.napier.sem.App;
+import com.napier.sem.Datasets;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for hosting several named datasets in one process. JDBC is mocked
+ * so each dataset can return its own rows without a database.
+ */
+class DatasetsTest {
+
+    private void injectConnection(App app, Connection con) throws Exception {
+        java.lang.reflect.Field f = App.class.getDeclaredField("con");
+        f.setAccessible(true);
+        f.set(app, con);
+    }
+
+    // A connection whose city queries, plain or streaming, return one row.
+    private Connection cityConnection(int id, String name) throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(con.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getInt("ID")).thenReturn(id);
+        when(rs.getString("Name")).thenReturn(new String(name));
+        when(rs.getString("CountryCode")).thenAnswer(inv -> new String("GBR"));
+        when(rs.getString("District")).thenAnswer(inv -> new String("England"));
+        when(rs.getInt("Population")).thenReturn(1000);
+        return con;
+    }
+
+    @Test
+    void parse_buildsNamedDatasetsInOrder() {
+        Datasets ds = Datasets.parse(
+                "eu=jdbc:mysql://eu:3306/world?useSSL=false&serverTimezone=UTC; us=jdbc:mysql://us:3306/world",
+                "root", "example");
+        assertNotNull(ds);
+        assertEquals(List.of("eu", "us"), List.copyOf(ds.keys()));
+    }
+
+    @Test
+    void parse_emptySpec_returnsNull() {
+        assertNull(Datasets.parse("", "root", "example"));
+        assertNull(Datasets.parse(null, "root", "example"));
+    }
+
+    @Test
+    void parse_malformedEntry_throws() {
+        assertThrows(IllegalArgumentException.class, () -> Datasets.parse("eu", "root", "example"));
+        assertThrows(IllegalArgumentException.class, () -> Datasets.parse("eu=a;eu=b", "root", "example"));
+    }
+
+    @Test
+    void unknownDataset_throws() {
+        Datasets ds = new Datasets();
+        ds.add("eu", new App("jdbc:mock", "u", "p"));
+        assertThrows(IllegalArgumentException.class, () -> ds.getCity("us", 1));
+    }
+
+    @Test
+    void reports_routeToDataset() throws Exception {
+        App eu = new App("jdbc:mock", "u", "p");
+        App us = new App("jdbc:mock", "u", "p");
+        injectConnection(eu, cityConnection(1, "London"));
+        injectConnection(us, cityConnection(2, "Boston"));
+
+        Datasets ds = new Datasets();
+        ds.add("eu", eu);
+        ds.add("us", us);
+
+        assertEquals("London", ds.getCity("eu", 1).name);
+        assertEquals("Boston", ds.getCity("us", 2).name);
+    }
+
+    @Test
+    void batchAndExportReports_routeToDataset() throws Exception {
+        Datasets ds = new Datasets();
+        App eu = new App("jdbc:mock", "u", "p");
+        injectConnection(eu, cityConnection(7, "Paris"));
+        ds.add("eu", eu);
+
+        Map<Integer, App.City> byId = ds.getCitiesByIds("eu", List.of(7));
+        assertEquals("Paris", byId.get(7).name);
+
+        App us = new App("jdbc:mock", "u", "p");
+        injectConnection(us, cityConnection(8, "Denver"));
+        ds.add("us", us);
+        List<App.City> exported = new ArrayList<>();
+        assertEquals(1, ds.exportCityRanking("us", null, 0, exported::add));
+        assertEquals("Denver", exported.get(0).name);
+
+        assertThrows(IllegalArgumentException.class, () -> ds.exportCountryRanking("apac", 10, c -> {}));
+    }
+}
@@ -0,0 +1,127 @@
+package com.napier.devops;
+
+import com.napier.sem.LatencyRecorder;
+import com.napier.sem.LoadTest;
+import com.napier.sem.WorkloadProfile;
+import com.napier.sem.ZipfGenerator;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for the load-test harness: workload generation is reproducible
+ * and skewed, percentiles are computed correctly, and a short open-loop
+ * run against the in-process stand-in issues exactly the scheduled load.
+ */
+class LoadTestTest {
+
+    @Test
+    void zipf_isReproducibleAndSkewedTowardsLowRanks() {
+        ZipfGenerator a = new ZipfGenerator(4079, 0.99, new Random(42));
+        ZipfGenerator b = new ZipfGenerator(4079, 0.99, new Random(42));
+        int hot = 0;
+        for (int i = 0; i < 10_000; i++) {
+            int r = a.next();
+            assertEquals(r, b.next());
+            assertTrue(r >= 1 && r <= 4079);
+            if (r <= 10) hot++;
+        }
+        // Under Zipf(0.99) the top 10 of ~4k items draw roughly a third of traffic.
+        assertTrue(hot > 2500 && hot < 4500, "hot=" + hot);
+    }
+
+    @Test
+    void latencyRecorder_reportsNearestRankPercentiles() {
+        LatencyRecorder r = new LatencyRecorder();
+        for (int i = 100; i >= 1; i--) r.record(i);
+        assertEquals(100, r.count());
+        assertEquals(50, r.percentile(50));
+        assertEquals(99, r.percentile(99));
+        assertEquals(100, r.max());
+        assertEquals(50.5, r.mean(), 1e-9);
+        assertEquals(0, new LatencyRecorder().percentile(99));
+    }
+
+    @Test
+    void builtInProfile_loadsByName_andEnvOverridesDb() {
+        WorkloadProfile p = WorkloadProfile.load("zipf-mixed");
+        assertEquals("zipf-mixed", p.name);
+        assertEquals(70, p.getCityWeight);
+        assertFalse(p.countryCodes.isEmpty());
+
+        Properties props = new Properties();
+        props.setProperty("mix.getCity", "1");
+        WorkloadProfile q = WorkloadProfile.from(props, Map.of("DB_URL", "jdbc:mysql://db:3306/world"));
+        assertEquals("jdbc:mysql://db:3306/world", q.dbUrl);
+    }
+
+    @Test
+    void profile_withoutAnyWeight_isRejected() {
+        assertThrows(IllegalArgumentException.class, () -> WorkloadProfile.from(new Properties(), Map.of()));
+        Properties negative = new Properties();
+        negative.setProperty("mix.getCity", "10");
+        negative.setProperty("mix.topCities", "-5");
+        assertThrows(IllegalArgumentException.class, () -> WorkloadProfile.from(negative, Map.of()));
+        assertThrows(IllegalArgumentException.class, () -> WorkloadProfile.load("no-such-profile"));
+    }
+
+    @Test
+    void profile_withRateTooHighToSchedule_isRejected() {
+        Properties p = new Properties();
+        p.setProperty("mix.getCity", "1");
+        p.setProperty("rate", "2e9");
+        assertThrows(IllegalArgumentException.class, () -> WorkloadProfile.from(p, Map.of()));
+        p.setProperty("rate", "1e9");
+        assertEquals(1e9, WorkloadProfile.from(p, Map.of()).rate);
+    }
+
+    @Test
+    void standInRun_issuesScheduledRequestsAndRecordsLatency() {
+        Properties props = new Properties();
+        props.setProperty("target", "standin");
+        props.setProperty("rate", "200");
+        props.setProperty("duration.seconds", "1");
+        props.setProperty("warmup.seconds", "0");
+        props.setProperty("connections", "2");
+        props.setProperty("mix.getCity", "3");
+        props.setProperty("mix.topCities", "1");
+        props.setProperty("standin.serviceMicros", "100");
+
+        LoadTest lt = new LoadTest(WorkloadProfile.from(props, Map.of()));
+        lt.run();
+
+        assertEquals(200, lt.overall().count());
+        assertEquals(200, lt.recorder(LoadTest.Op.GET_CITY).count() + lt.recorder(LoadTest.Op.TOP_CITIES).count());
+        assertEquals(0, lt.recorder(LoadTest.Op.CONTINENTS).count());
+        assertTrue(lt.overall().percentile(50) > 0);
+    }
+
+    @Test
+    void coalescedProfile_routesGetCityThroughCoalescer() {
+        WorkloadProfile p = WorkloadProfile.load("city-burst-coalesced");
+        assertTrue(p.coalesceGetCity);
+        assertEquals(64, p.coalesceMaxBatch);
+
+        Properties props = new Properties();
+        props.setProperty("target", "standin");
+        props.setProperty("rate", "2000");
+        props.setProperty("duration.seconds", "1");
+        props.setProperty("warmup.seconds", "0");
+        props.setProperty("connections", "2");
+        props.setProperty("mix.getCity", "1");
+        props.setProperty("getCity.coalesce", "true");
+        props.setProperty("getCity.coalesce.windowMicros", "2000");
+        props.setProperty("standin.serviceMicros", "100");
+
+        LoadTest lt = new LoadTest(WorkloadProfile.from(props, Map.of()));
+        lt.run();
+
+        assertEquals(2000, lt.recorder(LoadTest.Op.GET_CITY).count());
+        assertTrue(lt.coalescedBatches() > 0);
+        assertTrue(lt.coalescedBatches() < 1000, "batches=" + lt.coalescedBatches());
+    }
+}
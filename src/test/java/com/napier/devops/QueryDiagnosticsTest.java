@@ -0,0 +1,128 @@
+package com.napier.devops;
+
+import com.napier.sem.App;
+import com.napier.sem.QueryDiagnostics;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests for plan analysis and the slow-query log. EXPLAIN output is
+ * mocked with the plan MySQL gives for the report queries on the stock
+ * world schema (no secondary indexes besides the foreign keys).
+ */
+class QueryDiagnosticsTest {
+
+    private static final String TOP_CITIES_SQL = "SELECT ID, Name, CountryCode, District, Population " +
+            "FROM city WHERE CountryCode = ? ORDER BY Population DESC LIMIT ?";
+
+    private void injectConnection(App app, Connection con) throws Exception {
+        java.lang.reflect.Field f = App.class.getDeclaredField("con");
+        f.setAccessible(true);
+        f.set(app, con);
+    }
+
+    @Test
+    void analyze_flagsFilesortAndRecommendsCoveringIndex() {
+        List<String> findings = QueryDiagnostics.analyze(TOP_CITIES_SQL, List.of(
+                Map.of("table", "city", "type", "ref", "key", "CountryCode", "rows", "81",
+                        "Extra", "Using index condition; Using filesort")));
+        assertEquals(1, findings.size());
+        assertTrue(findings.get(0).startsWith("filesort on city"));
+        assertTrue(findings.get(0).contains("(CountryCode, Population)"));
+    }
+
+    @Test
+    void analyze_flagsFullScansAndTemporaryTables() {
+        List<String> continent = QueryDiagnostics.analyze(
+                "SELECT Continent, SUM(Population) AS Pop FROM country GROUP BY Continent ORDER BY Pop DESC",
+                List.of(Map.of("table", "country", "type", "ALL", "rows", "239",
+                        "Extra", "Using temporary; Using filesort")));
+        assertEquals(3, continent.size());
+        assertTrue(continent.stream().allMatch(f -> f.contains("(Continent, Population)")));
+
+        List<String> export = QueryDiagnostics.analyze(
+                "SELECT ID, Name, CountryCode, District, Population FROM city",
+                List.of(Map.of("table", "city", "type", "ALL", "rows", "4188", "Extra", "")));
+        assertEquals(1, export.size());
+        assertTrue(export.get(0).contains("full scan on city"));
+        assertTrue(export.get(0).contains("expected"));
+
+        List<String> byId = QueryDiagnostics.analyze(
+                "SELECT ID, Name, CountryCode, District, Population FROM city WHERE ID = ?",
+                List.of(Map.of("table", "city", "type", "const", "key", "PRIMARY", "rows", "1", "Extra", "")));
+        assertTrue(byId.isEmpty());
+    }
+
+    @Test
+    void app_explainsEachQueryOnce_andLogsSlowQueriesWithParams() throws Exception {
+        Connection con = mock(Connection.class);
+        PreparedStatement query = mock(PreparedStatement.class);
+        PreparedStatement explain = mock(PreparedStatement.class);
+        ResultSet empty = mock(ResultSet.class);
+        ResultSet plan = mock(ResultSet.class);
+        ResultSetMetaData md = mock(ResultSetMetaData.class);
+
+        when(con.prepareStatement(TOP_CITIES_SQL)).thenReturn(query);
+        when(con.prepareStatement("EXPLAIN " + TOP_CITIES_SQL)).thenReturn(explain);
+        when(query.executeQuery()).thenReturn(empty);
+        when(explain.executeQuery()).thenReturn(plan);
+        when(plan.getMetaData()).thenReturn(md);
+        when(md.getColumnCount()).thenReturn(2);
+        when(md.getColumnLabel(1)).thenReturn("table");
+        when(md.getColumnLabel(2)).thenReturn("Extra");
+        when(plan.next()).thenReturn(true, false);
+        when(plan.getString(1)).thenReturn("city");
+        when(plan.getString(2)).thenReturn("Using where; Using filesort");
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        App app = new App("jdbc:mock", "u", "p");
+        injectConnection(app, con);
+        // Threshold 0 so every query counts as slow.
+        app.setDiagnostics(new QueryDiagnostics(0, new PrintStream(log)));
+
+        app.getTopCitiesInCountry("GBR", 5);
+        app.getTopCitiesInCountry("FRA", 0);
+
+        verify(con, times(1)).prepareStatement("EXPLAIN " + TOP_CITIES_SQL);
+        verify(explain).setObject(1, "GBR");
+        verify(explain).setObject(2, 5);
+
+        String out = log.toString();
+        assertTrue(out.contains("[diag] EXPLAIN " + TOP_CITIES_SQL));
+        assertTrue(out.contains("filesort on city"));
+        assertTrue(out.contains("params=[GBR, 5]"));
+        assertTrue(out.contains("params=[FRA, 1]"));
+    }
+
+    @Test
+    void explainCache_isKeptPerConnection_soOneDatasetCannotExhaustAnother() throws Exception {
+        Connection busy = mock(Connection.class);
+        Connection late = mock(Connection.class);
+        // A failing EXPLAIN is logged and still counts as explained.
+        when(busy.prepareStatement(startsWith("EXPLAIN"))).thenThrow(new java.sql.SQLException("no"));
+        when(late.prepareStatement(startsWith("EXPLAIN"))).thenThrow(new java.sql.SQLException("no"));
+
+        QueryDiagnostics diag = new QueryDiagnostics(Long.MAX_VALUE / 1_000_000L, new PrintStream(new ByteArrayOutputStream()));
+        int limit = QueryDiagnostics.MAX_EXPLAINED_PER_CONNECTION;
+        for (int i = 0; i < limit + 10; i++) {
+            diag.afterQuery(busy, "SELECT " + i, new Object[0], 0, 0);
+        }
+        diag.afterQuery(late, TOP_CITIES_SQL, new Object[0], 0, 0);
+        diag.afterQuery(late, TOP_CITIES_SQL, new Object[0], 0, 0);
+        diag.afterQuery(busy, TOP_CITIES_SQL, new Object[0], 0, 0);
+
+        verify(busy, times(limit)).prepareStatement(startsWith("EXPLAIN"));
+        verify(late, times(1)).prepareStatement("EXPLAIN " + TOP_CITIES_SQL);
+    }
+}
@@ -0,0 +1,152 @@
+package com.napier.devops;
+
+import com.napier.sem.App;
+import com.napier.sem.RankingEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests for client-side ranking: the bounded top-K heap and the external
+ * merge sort must both produce the same order as sorting everything in
+ * memory, and spill files must be cleaned up.
+ */
+class RankingEngineTest {
+
+    @TempDir
+    Path tmp;
+
+    private static List<App.City> randomCities(int n, long seed) {
+        Random r = new Random(seed);
+        List<App.City> list = new ArrayList<>();
+        for (int i = 1; i <= n; i++) {
+            App.City c = new App.City();
+            c.id = i;
+            c.name = "City" + i;
+            c.countryCode = i % 3 == 0 ? null : "C" + (i % 7);
+            c.district = "D" + (i % 11);
+            // Narrow range so there are plenty of population ties.
+            c.population = r.nextInt(500);
+            list.add(c);
+        }
+        return list;
+    }
+
+    private static List<Integer> expectedIds(List<App.City> cities, int limit) {
+        List<App.City> sorted = new ArrayList<>(cities);
+        sorted.sort(RankingEngine.CITY_ORDER);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < Math.min(limit, sorted.size()); i++) ids.add(sorted.get(i).id);
+        return ids;
+    }
+
+    private List<App.City> rank(List<App.City> cities, int limit, int memoryRows, int[] spilled) throws Exception {
+        RankingEngine<App.City> engine =
+                new RankingEngine<>(RankingEngine.CITY_ORDER, RankingEngine.CITY_IO, memoryRows, tmp);
+        List<App.City> out = new ArrayList<>();
+        try (RankingEngine.Session<App.City> s = engine.open(limit)) {
+            for (App.City c : cities) s.add(c);
+            s.emit(out::add);
+            spilled[0] = s.spilledRows();
+        }
+        return out;
+    }
+
+    private static List<Integer> ids(List<App.City> cities) {
+        List<Integer> ids = new ArrayList<>();
+        for (App.City c : cities) ids.add(c.id);
+        return ids;
+    }
+
+    @Test
+    void smallLimit_usesHeap_andNeverSpills() throws Exception {
+        List<App.City> cities = randomCities(2000, 1);
+        int[] spilled = new int[1];
+        List<App.City> out = rank(cities, 25, 100, spilled);
+        assertEquals(expectedIds(cities, 25), ids(out));
+        assertEquals(0, spilled[0]);
+    }
+
+    @Test
+    void unboundedLimit_spillsAndMergesInOrder() throws Exception {
+        List<App.City> cities = randomCities(1234, 2);
+        int[] spilled = new int[1];
+        List<App.City> out = rank(cities, 0, 100, spilled);
+        assertEquals(expectedIds(cities, cities.size()), ids(out));
+        assertTrue(spilled[0] >= 1200, "Most rows should go through spill files");
+
+        // Round trip through the spill format keeps every field, nulls included.
+        App.City first = out.get(0);
+        App.City original = cities.get(first.id - 1);
+        assertEquals(original.name, first.name);
+        assertEquals(original.countryCode, first.countryCode);
+        assertEquals(original.district, first.district);
+        assertEquals(original.population, first.population);
+
+        try (Stream<Path> files = Files.list(tmp)) {
+            assertEquals(0, files.count(), "Spill files should be deleted on close");
+        }
+    }
+
+    @Test
+    void largeLimit_overBudget_isTruncatedAfterMerge() throws Exception {
+        List<App.City> cities = randomCities(1000, 3);
+        int[] spilled = new int[1];
+        List<App.City> out = rank(cities, 450, 100, spilled);
+        assertEquals(expectedIds(cities, 450), ids(out));
+    }
+
+    @Test
+    void unboundedLimit_fittingInMemory_doesNotSpill() throws Exception {
+        List<App.City> cities = randomCities(50, 4);
+        int[] spilled = new int[1];
+        List<App.City> out = rank(cities, 0, 100, spilled);
+        assertEquals(expectedIds(cities, 50), ids(out));
+        assertEquals(0, spilled[0]);
+    }
+
+    @Test
+    void manyRuns_areMergedInPassesWithinFanIn() throws Exception {
+        List<App.City> cities = randomCities(5000, 5);
+        // 500 runs with a fan-in of 4 needs several intermediate passes.
+        RankingEngine<App.City> engine =
+                new RankingEngine<>(RankingEngine.CITY_ORDER, RankingEngine.CITY_IO, 10, tmp, 4);
+        List<App.City> out = new ArrayList<>();
+        try (RankingEngine.Session<App.City> s = engine.open(0)) {
+            for (App.City c : cities) s.add(c);
+            assertEquals(5000, s.emit(out::add));
+            assertTrue(s.mergePasses() >= 4, "Expected multiple merge passes but got " + s.mergePasses());
+        }
+        assertEquals(expectedIds(cities, cities.size()), ids(out));
+        try (Stream<Path> files = Files.list(tmp)) {
+            assertEquals(0, files.count(), "Intermediate runs should be deleted");
+        }
+    }
+
+    @Test
+    void manyRuns_withLimit_keepOnlyTheBestRowsPerPass() throws Exception {
+        List<App.City> cities = randomCities(3000, 6);
+        RankingEngine<App.City> engine =
+                new RankingEngine<>(RankingEngine.CITY_ORDER, RankingEngine.CITY_IO, 10, tmp, 3);
+        List<App.City> out = new ArrayList<>();
+        try (RankingEngine.Session<App.City> s = engine.open(25)) {
+            for (App.City c : cities) s.add(c);
+            s.emit(out::add);
+        }
+        assertEquals(expectedIds(cities, 25), ids(out));
+    }
+
+    @Test
+    void fanInBelowTwo_isRejected() {
+        assertThrows(IllegalArgumentException.class, () ->
+                new RankingEngine<>(RankingEngine.CITY_ORDER, RankingEngine.CITY_IO, 10, tmp, 1));
+    }
+}
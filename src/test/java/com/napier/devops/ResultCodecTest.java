@@ -0,0 +1,138 @@
+package com.napier.devops;
+
+import com.napier.sem.App;
+import com.napier.sem.BufferPool;
+import com.napier.sem.ResultCodec;
+import org.junit.jupiter.api.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Round-trip and size checks for the binary result encoding. The JSON
+ * baseline is built by hand here so the comparison does not depend on a
+ * JSON library.
+ */
+class ResultCodecTest {
+
+    private static App.City city(int id, String name, String code, String district, int pop) {
+        App.City c = new App.City();
+        c.id = id;
+        c.name = name;
+        c.countryCode = code;
+        c.district = district;
+        c.population = pop;
+        return c;
+    }
+
+    private static List<App.City> gbrCities() {
+        List<App.City> list = new ArrayList<>();
+        list.add(city(456, "London", "GBR", "England", 7285000));
+        list.add(city(457, "Birmingham", "GBR", "England", 1013000));
+        list.add(city(458, "Glasgow", "GBR", "Scotland", 619680));
+        list.add(city(459, "Liverpool", "GBR", "England", 461000));
+        list.add(city(460, "Edinburgh", "GBR", "Scotland", 450180));
+        list.add(city(461, "Sheffield", "GBR", "England", 431607));
+        return list;
+    }
+
+    private static String toJson(List<App.City> cities) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < cities.size(); i++) {
+            App.City c = cities.get(i);
+            if (i > 0) sb.append(',');
+            sb.append("{\"id\":").append(c.id)
+                    .append(",\"name\":\"").append(c.name)
+                    .append("\",\"countryCode\":\"").append(c.countryCode)
+                    .append("\",\"district\":\"").append(c.district)
+                    .append("\",\"population\":").append(c.population).append('}');
+        }
+        return sb.append(']').toString();
+    }
+
+    @Test
+    void cities_roundTrip_preservesAllFields() {
+        List<App.City> in = gbrCities();
+        in.add(city(-1, "S\u00e3o Paulo \u4e2d\ud83d\ude00", "BRA", null, 0));
+
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        int written = ResultCodec.encodeCities(in, buf);
+        assertEquals(buf.position(), written);
+
+        List<App.City> out = ResultCodec.decodeCities(buf.flip());
+        assertEquals(in.size(), out.size());
+        for (int i = 0; i < in.size(); i++) {
+            App.City a = in.get(i);
+            App.City b = out.get(i);
+            assertEquals(a.id, b.id);
+            assertEquals(a.name, b.name);
+            assertEquals(a.countryCode, b.countryCode);
+            assertEquals(a.district, b.district);
+            assertEquals(a.population, b.population);
+        }
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    void countriesAndContinents_roundTrip_throughPooledDirectBuffer() {
+        BufferPool pool = new BufferPool(512, 2);
+
+        App.Country china = new App.Country();
+        china.code = "CHN";
+        china.name = "China";
+        china.population = 1277558000L;
+        ByteBuffer buf = ResultCodec.encodeCountries(List.of(china), pool);
+        assertTrue(buf.isDirect());
+        List<App.Country> countries = ResultCodec.decodeCountries(buf);
+        assertEquals("CHN", countries.get(0).code);
+        assertEquals("China", countries.get(0).name);
+        assertEquals(1277558000L, countries.get(0).population);
+        pool.release(buf);
+
+        App.ContinentPop asia = new App.ContinentPop();
+        asia.continent = "Asia";
+        asia.population = 3705025700L;
+        ByteBuffer buf2 = ResultCodec.encodeContinentPops(List.of(asia), pool);
+        assertSame(buf, buf2, "Released buffer should be reused");
+        List<App.ContinentPop> pops = ResultCodec.decodeContinentPops(buf2);
+        assertEquals("Asia", pops.get(0).continent);
+        assertEquals(3705025700L, pops.get(0).population);
+    }
+
+    @Test
+    void encode_overflow_leavesBufferPositionUnchanged() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        buf.put((byte) 9);
+        assertThrows(BufferOverflowException.class, () -> ResultCodec.encodeCities(gbrCities(), buf));
+        assertEquals(1, buf.position());
+    }
+
+    @Test
+    void decode_wrongKind_isRejected() {
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        ResultCodec.encodeContinentPops(new ArrayList<>(), buf);
+        assertThrows(IllegalArgumentException.class, () -> ResultCodec.decodeCities(buf.flip()));
+    }
+
+    @Test
+    void cities_payload_isMuchSmallerThanJson() {
+        List<App.City> cities = gbrCities();
+        ByteBuffer buf = ByteBuffer.allocate(1024);
+        int binary = ResultCodec.encodeCities(cities, buf);
+        int json = toJson(cities).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(binary * 3 < json, "binary=" + binary + " json=" + json);
+    }
+
+    @Test
+    void decode_countLargerThanPayload_isRejectedBeforeAllocating() {
+        // Header for a country message followed by a count of ~2^31.
+        ByteBuffer buf = ByteBuffer.wrap(new byte[]{0x57, 1, 2,
+                (byte) 0xFE, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+        assertThrows(IllegalArgumentException.class, () -> ResultCodec.decodeCountries(buf));
+    }
+}